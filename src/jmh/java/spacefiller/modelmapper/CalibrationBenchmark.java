@@ -0,0 +1,53 @@
+package spacefiller.modelmapper;
+
+import org.openjdk.jmh.annotations.*;
+import processing.core.PVector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CalibrationBenchmark {
+  @Param({"6", "20", "100", "500"})
+  public int correspondences;
+
+  private Map<PVector, PVector> pointMapping;
+  private Map<PVector, PVector> noisyPointMapping;
+  private CalibrationSettings robustSettings;
+
+  @Setup
+  public void setup() {
+    pointMapping = Fixtures.createPointMapping(correspondences, 1);
+
+    // Every tenth correspondence misplaced by up to 150 pixels
+    Random random = new Random(2);
+    noisyPointMapping = new HashMap<>();
+    int i = 0;
+    for (Map.Entry<PVector, PVector> entry : pointMapping.entrySet()) {
+      PVector imagePoint = entry.getValue().copy();
+      if (i++ % 10 == 9) {
+        imagePoint.add(random.nextFloat() * 300 - 150, random.nextFloat() * 300 - 150);
+      }
+      noisyPointMapping.put(entry.getKey(), imagePoint);
+    }
+    robustSettings = new CalibrationSettings();
+    robustSettings.robust = true;
+
+    // Load OpenCV outside of the measurement
+    Calibration.calibrate(pointMapping, Fixtures.WIDTH, Fixtures.HEIGHT);
+  }
+
+  @Benchmark
+  public CalibrationData calibrate() {
+    return Calibration.calibrate(pointMapping, Fixtures.WIDTH, Fixtures.HEIGHT);
+  }
+
+  @Benchmark
+  public CalibrationData calibrateRobust() {
+    return Calibration.calibrate(noisyPointMapping, Fixtures.WIDTH, Fixtures.HEIGHT, robustSettings);
+  }
+}
@@ -0,0 +1,88 @@
+package spacefiller.modelmapper;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PMatrix3D;
+import processing.core.PShape;
+import processing.core.PVector;
+import processing.opengl.PGraphics3D;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+// Synthetic inputs shared by the benchmarks. None of this needs a window or an OpenGL
+// context: an undrawn PGraphics3D can still create GEOMETRY and GROUP shapes and compute
+// camera matrices.
+class Fixtures {
+  static final int WIDTH = 1920;
+  static final int HEIGHT = 1080;
+
+  static PApplet createApplet() {
+    PApplet applet = new PApplet();
+    PGraphics3D graphics = new PGraphics3D();
+    graphics.setParent(applet);
+    graphics.setSize(WIDTH, HEIGHT);
+    applet.g = graphics;
+    applet.width = WIDTH;
+    applet.height = HEIGHT;
+    return applet;
+  }
+
+  // Model points scattered through a 200 unit cube, mapped to where a known camera 600
+  // units away would see them, with half a pixel of noise to mimic mouse placement.
+  static Map<PVector, PVector> createPointMapping(int count, long seed) {
+    Random random = new Random(seed);
+    PMatrix3D modelView = new PMatrix3D();
+    modelView.translate(10, -20, 600);
+    modelView.rotateY(0.4f);
+    modelView.rotateX(0.2f);
+    float f = WIDTH * 0.8f;
+
+    Map<PVector, PVector> pointMapping = new HashMap<>();
+    while (pointMapping.size() < count) {
+      PVector modelPoint = new PVector(
+          random.nextFloat() * 200 - 100,
+          random.nextFloat() * 200 - 100,
+          random.nextFloat() * 200 - 100);
+      PVector cameraPoint = modelView.mult(modelPoint, null);
+      PVector imagePoint = new PVector(
+          f * cameraPoint.x / cameraPoint.z + WIDTH / 2f + (float) random.nextGaussian() * 0.5f,
+          f * cameraPoint.y / cameraPoint.z + HEIGHT / 2f + (float) random.nextGaussian() * 0.5f);
+      pointMapping.put(modelPoint, imagePoint);
+    }
+    return pointMapping;
+  }
+
+  // A triangle soup of `vertexCount` vertices on the surface of a sphere of radius 100
+  static PShape createMesh(PApplet applet, int vertexCount, long seed) {
+    Random random = new Random(seed);
+    PShape shape = applet.createShape();
+    shape.beginShape(PConstants.TRIANGLES);
+    for (int i = 0; i < vertexCount - vertexCount % 3; i++) {
+      PVector v = PVector.random3D(applet).mult(100);
+      shape.vertex(v.x, v.y, v.z, random.nextFloat(), random.nextFloat());
+    }
+    shape.endShape();
+    return shape;
+  }
+
+  static PShape createGroup(PApplet applet, int childCount, int verticesPerChild, long seed) {
+    PShape group = applet.createShape(PConstants.GROUP);
+    for (int i = 0; i < childCount; i++) {
+      group.addChild(createMesh(applet, verticesPerChild, seed + i));
+    }
+    return group;
+  }
+
+  // Projection * camera matrix of a default perspective looking at the origin from
+  // `distance` units away, in the layout of PeasyCam.getModelViewProjection()
+  static float[] createModelViewProjection(PApplet applet, float distance) {
+    PGraphics3D graphics = (PGraphics3D) applet.g;
+    graphics.perspective();
+    graphics.camera(0, 0, distance, 0, 0, 0, 0, 1, 0);
+    PMatrix3D mvp = graphics.projection.get();
+    mvp.apply(graphics.camera);
+    return mvp.get(null);
+  }
+}
@@ -0,0 +1,45 @@
+package spacefiller.modelmapper;
+
+import org.openjdk.jmh.annotations.*;
+import processing.core.PVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PersistenceBenchmark {
+  @Param({"6", "100", "500"})
+  public int correspondences;
+
+  private Map<PVector, PVector> pointMapping;
+  private String path;
+
+  @Setup
+  public void setup() throws IOException {
+    pointMapping = Fixtures.createPointMapping(correspondences, 1);
+    File file = File.createTempFile("calibration", ".ser");
+    file.deleteOnExit();
+    path = file.getAbsolutePath();
+    IO.writePointMapping(pointMapping, path);
+  }
+
+  @Benchmark
+  public void save() throws IOException {
+    IO.writePointMapping(pointMapping, path);
+  }
+
+  @Benchmark
+  public Map<PVector, PVector> load() throws IOException, ClassNotFoundException {
+    return IO.readPointMapping(path);
+  }
+
+  @Benchmark
+  public Map<PVector, PVector> roundTrip() throws IOException, ClassNotFoundException {
+    IO.writePointMapping(pointMapping, path);
+    return IO.readPointMapping(path);
+  }
+}
@@ -0,0 +1,48 @@
+package spacefiller.modelmapper;
+
+import org.openjdk.jmh.annotations.*;
+import processing.core.PApplet;
+import processing.core.PShape;
+import processing.core.PVector;
+import processing.opengl.PGraphics3D;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PickingBenchmark {
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int vertices;
+
+  private PShape mesh;
+  private Mesh weldedMesh;
+  private PGraphics3D graphics;
+  private float[] mvp;
+  private PVector mouse;
+
+  @Setup
+  public void setup() {
+    PApplet applet = Fixtures.createApplet();
+    mesh = Fixtures.createMesh(applet, vertices, 1);
+    weldedMesh = Mesh.fromShape(mesh);
+    mvp = Fixtures.createModelViewProjection(applet, 400);
+    graphics = (PGraphics3D) applet.g;
+    mouse = new PVector(Fixtures.WIDTH / 2f, Fixtures.HEIGHT / 2f);
+  }
+
+  @Benchmark
+  public PVector pickWithMatrix() {
+    return Utils.getClosestPointOnShape(mouse, mesh, mvp, Fixtures.WIDTH, Fixtures.HEIGHT);
+  }
+
+  @Benchmark
+  public PVector pickWithGraphics() {
+    return Utils.getClosestPointOnShape(mouse, mesh, graphics);
+  }
+
+  @Benchmark
+  public PVector pickWeldedMesh() {
+    return Utils.getClosestPointOnMesh(mouse, weldedMesh, mvp, Fixtures.WIDTH, Fixtures.HEIGHT);
+  }
+}
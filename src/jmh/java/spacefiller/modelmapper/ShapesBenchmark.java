@@ -0,0 +1,41 @@
+package spacefiller.modelmapper;
+
+import org.openjdk.jmh.annotations.*;
+import processing.core.PApplet;
+import processing.core.PShape;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShapesBenchmark {
+  @Param({"1000", "100000", "1000000"})
+  public int vertices;
+
+  private PApplet applet;
+  private PShape geometry;
+  private PShape group;
+
+  @Setup
+  public void setup() {
+    applet = Fixtures.createApplet();
+    geometry = Fixtures.createMesh(applet, vertices, 1);
+    group = Fixtures.createGroup(applet, 100, vertices / 100, 1);
+  }
+
+  @Benchmark
+  public PShape copyGeometry() {
+    return Shapes.createShape(applet, geometry);
+  }
+
+  @Benchmark
+  public PShape copyGroup() {
+    return Shapes.createShape(applet, group);
+  }
+
+  @Benchmark
+  public long hashGroup() {
+    return Shapes.hashGeometry(group);
+  }
+}
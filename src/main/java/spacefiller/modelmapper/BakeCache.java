@@ -0,0 +1,163 @@
+package spacefiller.modelmapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// A directory of baked data, like `ProjectorMaps`, that survives restarts. Entries are
+// content addressed: each is a raw file named after a hash of everything it was baked
+// from, so an entry never needs invalidating; a changed model or calibration simply
+// hashes to a different name. Entries are memory mapped when read, so loading one takes
+// next to no time and its pages are only read from disk as they're used.
+//
+// The directory is kept under a maximum size by deleting the least recently used
+// entries. Reading an entry touches its modification time, so the order survives
+// restarts too.
+public class BakeCache {
+  public static final long DEFAULT_MAX_BYTES = 1L << 30;
+
+  private static final String EXTENSION = ".bake";
+
+  private final File directory;
+  private long maxBytes;
+
+  public BakeCache(String directory) {
+    this(directory, DEFAULT_MAX_BYTES);
+  }
+
+  public BakeCache(String directory, long maxBytes) {
+    this.directory = new File(directory);
+    this.maxBytes = maxBytes;
+  }
+
+  public String getDirectory() {
+    return directory.getPath();
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  // Changes the maximum size, evicting entries right away if the cache is over it
+  public synchronized void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+    evict(null);
+  }
+
+  // Maps the entry for `key` into memory, read only, or returns null if there isn't one
+  synchronized MappedByteBuffer get(String key) throws IOException {
+    File file = getFile(key);
+    if (!file.exists()) {
+      return null;
+    }
+
+    file.setLastModified(System.currentTimeMillis());
+    try (RandomAccessFile in = new RandomAccessFile(file, "r");
+         FileChannel channel = in.getChannel()) {
+      // The mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  // Stores the remaining bytes of `contents` as the entry for `key`, then evicts least
+  // recently used entries until the cache fits in its maximum size again. The entry is
+  // written to a temporary file first and atomically moved into place, so a sketch killed
+  // while saving doesn't leave a truncated entry behind, and readers never see a partly
+  // replaced one.
+  synchronized void put(String key, ByteBuffer contents) throws IOException {
+    Files.createDirectories(directory.toPath());
+    File file = getFile(key);
+    File temporary = File.createTempFile(key, ".tmp", directory);
+
+    try (RandomAccessFile out = new RandomAccessFile(temporary, "rw");
+         FileChannel channel = out.getChannel()) {
+      ByteBuffer bytes = contents.duplicate();
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    } catch (IOException e) {
+      temporary.delete();
+      throw e;
+    }
+
+    try {
+      try {
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      temporary.delete();
+      // Entries are named after what they were baked from, so one that's already there
+      // has the same contents. Replacing it can fail, e.g. on Windows while it's mapped.
+      if (!file.exists()) {
+        throw e;
+      }
+    }
+    evict(file);
+  }
+
+  public synchronized boolean contains(String key) {
+    return getFile(key).exists();
+  }
+
+  // Total size of the entries, in bytes
+  public synchronized long getSize() {
+    long size = 0;
+    for (File file : listEntries()) {
+      size += file.length();
+    }
+    return size;
+  }
+
+  public synchronized void clear() {
+    for (File file : listEntries()) {
+      file.delete();
+    }
+  }
+
+  // Deletes least recently used entries, other than `keep`, until the cache fits in
+  // `maxBytes`. Deleting can fail, e.g. on Windows while the entry is still mapped; those
+  // entries are left for a later eviction.
+  private void evict(File keep) {
+    File[] entries = listEntries();
+    long size = 0;
+    for (File file : entries) {
+      size += file.length();
+    }
+    if (size <= maxBytes) {
+      return;
+    }
+
+    Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+    for (File file : entries) {
+      if (size <= maxBytes) {
+        break;
+      }
+      if (file.equals(keep)) {
+        continue;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  private File[] listEntries() {
+    File[] entries = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+    return entries != null ? entries : new File[0];
+  }
+
+  private File getFile(String key) {
+    return new File(directory, key + EXTENSION);
+  }
+}
@@ -1,33 +1,78 @@
 package spacefiller.modelmapper;
 
-import org.bytedeco.javacpp.Loader;
-import org.bytedeco.opencv.opencv_java;
-import org.opencv.calib3d.Calib3d;
-import org.opencv.core.*;
+import org.opencv.core.Mat;
 import processing.core.PMatrix3D;
 import processing.core.PVector;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.IntStream;
 
-import static org.opencv.calib3d.Calib3d.Rodrigues;
 import static processing.core.PApplet.radians;
 
 public class Calibration {
-  // TODO: These numbers seem flipped -- shouldn't farDist be positive?
-  // TODO: how to choose these numbers?
+  // Near and far planes used when the caller doesn't give any. A negative far distance
+  // puts the far plane behind the projector, which in effect pushes it out to infinity:
+  // nothing is clipped, but depth precision is poor. `fitDepthRange` chooses planes that
+  // tightly enclose a model instead.
   public static final float DEFAULT_NEAR_DIST = 10f;
   public static final float DEFAULT_FAR_DIST = -500f;
 
-  private static boolean nativeLoaded = false;
+  // Smallest allowed ratio between the near and far distance chosen by `fitDepthRange`,
+  // for models that reach behind the projector
+  private static final float MIN_NEAR_FAR_RATIO = 0.001f;
+
+  // Fewest correspondences a calibration is solved from. This is also the size of the
+  // subsets tried in robust mode.
+  public static final int MIN_POINTS = 6;
+
+  // Fewest correspondences lens distortion is solved from. Solving for distortion adds four
+  // unknowns, and with fewer points they overfit the placement error.
+  public static final int MIN_POINTS_WITH_DISTORTION = 8;
+
+  // Focal length guess, as an angle of view, used for the minimal solves in robust mode
+  // when there's no projector profile
+  private static final float DEFAULT_AOV = 80;
+
+  // Without a projector profile the final solve is started from each of these throw
+  // ratios (focal length as a multiple of the image width), which covers short throw to
+  // long throw lenses, and then again from a few focal lengths around the best solution
+  // found. The solution with the lowest reprojection error wins.
+  private static final double[] COARSE_THROW_RATIOS = {0.5, 0.8, 1.2, 1.8, 2.7, 4.0};
+  private static final double[] FINE_FOCAL_LENGTH_FACTORS = {0.84, 0.92, 1.09, 1.19};
+
+  private static Boolean openCvAvailable;
+
+  // Returns the solver to use for `settings`. In `AUTO` mode that is OpenCV if its natives
+  // can be loaded, and the Java solver otherwise.
+  static PoseSolver getSolver(CalibrationSettings settings) {
+    switch (settings.backend) {
+      case OPENCV:
+        return OpenCvSolver.INSTANCE;
+      case JAVA:
+        return JavaSolver.INSTANCE;
+      default:
+        return isOpenCvAvailable() ? OpenCvSolver.INSTANCE : JavaSolver.INSTANCE;
+    }
+  }
 
-  private static void loadNative() {
-    if (!nativeLoaded) {
-      Loader.load(opencv_java.class);
-      nativeLoaded = true;
+  // Whether the OpenCV classes and natives for this platform can be loaded, as in lite
+  // releases they can't. Checked from here, since when the classes are missing, the call
+  // into `OpenCvSolver` is what fails to link.
+  static synchronized boolean isOpenCvAvailable() {
+    if (openCvAvailable == null) {
+      try {
+        OpenCvSolver.loadNative();
+        openCvAvailable = true;
+      } catch (Throwable e) {
+        System.out.println("ModelMapper: OpenCV is not available, using the Java solver (" + e + ")");
+        openCvAvailable = false;
+      }
     }
+    return openCvAvailable;
   }
 
   public static CalibrationData calibrate(
@@ -42,6 +87,35 @@ public class Calibration {
         DEFAULT_FAR_DIST);
   }
 
+  public static CalibrationData calibrate(
+      Map<PVector, PVector> pointMapping,
+      int width,
+      int height,
+      CalibrationSettings settings) {
+    return calibrate(
+        pointMapping,
+        width,
+        height,
+        DEFAULT_NEAR_DIST,
+        DEFAULT_FAR_DIST,
+        settings);
+  }
+
+  public static CalibrationData calibrate(
+      Map<PVector, PVector> pointMapping,
+      int width,
+      int height,
+      float nearDist,
+      float farDist) {
+    return calibrate(
+        pointMapping,
+        width,
+        height,
+        nearDist,
+        farDist,
+        new CalibrationSettings());
+  }
+
   // Given a mapping of 3d model space points to 2d projection space points, returns the
   // calibration that, when applied to a graphics context, will achieve that mapping.
   // If the point mapping contains less than 6 points, returns an empty calibration.
@@ -52,98 +126,488 @@ public class Calibration {
       int width,
       int height,
       float nearDist,
-      float farDist) {
-    loadNative();
+      float farDist,
+      CalibrationSettings settings) {
+    if (pointMapping.size() < MIN_POINTS) {
+      return CalibrationData.empty();
+    }
+
+    // Pack the points into flat arrays. Matrices for OpenCV are filled from these with a
+    // single copy, and the residuals are computed from them afterwards.
+
+    int count = pointMapping.size();
+    PVector[] modelPoints = new PVector[count];
+    float[] packedObjectPoints = new float[count * 3];
+    float[] packedImagePoints = new float[count * 2];
+
+    int i = 0;
+    for (Map.Entry<PVector, PVector> entry : pointMapping.entrySet()) {
+      PVector referencePoint = entry.getKey();
+      PVector imagePoint = entry.getValue();
+      modelPoints[i] = referencePoint;
+      packedObjectPoints[i * 3] = referencePoint.x;
+      packedObjectPoints[i * 3 + 1] = referencePoint.y;
+      packedObjectPoints[i * 3 + 2] = referencePoint.z;
+      packedImagePoints[i * 2] = imagePoint.x;
+      packedImagePoints[i * 2 + 1] = imagePoint.y;
+      i++;
+    }
 
-    Mat translation;
-    Mat rotation;
+    return calibrate(
+        modelPoints,
+        packedObjectPoints,
+        packedImagePoints,
+        count,
+        width,
+        height,
+        nearDist,
+        farDist,
+        settings);
+  }
 
-    if (pointMapping.size() < 6) {
+  // Same as `calibrate(pointMapping, ...)`, with the correspondences already packed into
+  // arrays of exactly `count` (x, y, z) object points and (x, y) image points
+  static CalibrationData calibrate(
+      PVector[] modelPoints,
+      float[] packedObjectPoints,
+      float[] packedImagePoints,
+      int count,
+      int width,
+      int height,
+      float nearDist,
+      float farDist,
+      CalibrationSettings settings) {
+    if (count < MIN_POINTS) {
       return CalibrationData.empty();
     }
 
-    // Prepare inputs to pass into OpenCV calibrateCamera function
-
-    Mat objectPoints = new MatOfPoint3f();
-    Mat imagePoints = new MatOfPoint3f();
-
-    for (PVector referencePoint : pointMapping.keySet()) {
-      PVector imagePoint = pointMapping.get(referencePoint);
-      objectPoints.push_back(new MatOfPoint3f(new Point3(referencePoint.x, referencePoint.y, referencePoint.z)));
-      imagePoints.push_back(new MatOfPoint2f(new Point(imagePoint.x, imagePoint.y)));
-    }
-
-    float aov = 80;
-    Size imageSize = new Size(width, height);
-    float f = (float) (imageSize.width * radians(aov));
-    Point c = new Point(imageSize.width / 2.0, imageSize.height / 2.0);
-
-    Mat cameraMatrix = new Mat(3, 3, CvType.CV_32FC1);
-    cameraMatrix.put(0, 0,
-        f, 0, c.x,
-        0, f, c.y,
-        0, 0, 1);
-
-    Mat distCoeffs = new Mat();
-
-    List<Mat> rvecs = new ArrayList<>();
-    List<Mat> tvecs = new ArrayList<>();
-
-    ArrayList<Mat> objectPointViews = new ArrayList<>();
-    objectPointViews.add(objectPoints);
-
-    ArrayList<Mat> imagePointViews = new ArrayList<>();
-    imagePointViews.add(imagePoints);
-
-    int flags = Calib3d.CALIB_FIX_ASPECT_RATIO
-        | Calib3d.CALIB_FIX_K1
-        | Calib3d.CALIB_FIX_K2
-        | Calib3d.CALIB_FIX_K3
-        | Calib3d.CALIB_ZERO_TANGENT_DIST
-        | Calib3d.CALIB_USE_INTRINSIC_GUESS;
-
-    // `calibrateCamera` writes its output into the `rvecs` and `tvecs` matrices
-    Calib3d.calibrateCamera(
-        objectPointViews,
-        imagePointViews,
-        imageSize,
-        cameraMatrix,
-        distCoeffs,
-        rvecs,
-        tvecs,
-        flags);
-
-    translation = tvecs.get(0);
-    rotation = rvecs.get(0);
-
-    // Prepare intput for calibrationMatrixValues function
-    double[] fovOutputX = new double[1];
-    double[] fovOutputY = new double[1];
-    double[] focalLengthOutput = new double[1];
-    Point principalPoint = new Point();
-    double[] aspectRatioOutput = new double[1];
-
-    // Call calibrationMatrixValues to get the `principalPoint` value (we don't use the
-    // other outputs of this function currently)
-    Calib3d.calibrationMatrixValues(
-        cameraMatrix,
-        imageSize,
-        0, 0,
-        fovOutputX,
-        fovOutputY,
-        focalLengthOutput,
-        principalPoint,
-        aspectRatioOutput);
-
-    // Use the outputs of `calibrateCamera` and `calibrationMatrixValues` to prepare
-    // a projection matrix and model view matrix which can be applied to Processing
-    // graphics context
-
-    double fx = cameraMatrix.get(0, 0)[0];
-    double fy = cameraMatrix.get(1, 1)[0];
-    double cx = principalPoint.x;
-    double cy = principalPoint.y;
+    PoseSolver solver = getSolver(settings);
+
+    CameraSolution solution = null;
+    float[] residuals = new float[count * 2];
+    boolean[] outliers = null;
+
+    if (settings.robust && count > MIN_POINTS) {
+      boolean[] inliers = findInliers(solver, packedObjectPoints, packedImagePoints, count, width, height, settings);
+      if (inliers != null) {
+        // Refine on the inliers of the best hypothesis, then classify every point against
+        // the refined solution
+        int[] indices = indicesOf(inliers);
+        solution = solveFromBestStart(
+            solver,
+            select(packedObjectPoints, 3, indices, indices.length),
+            select(packedImagePoints, 2, indices, indices.length),
+            indices.length,
+            width,
+            height,
+            settings.solveDistortion && indices.length >= MIN_POINTS_WITH_DISTORTION,
+            settings.projectorProfile);
+
+        if (solution != null) {
+          solution.computeResiduals(packedObjectPoints, packedImagePoints, count, residuals);
+          outliers = new boolean[count];
+          float thresholdSquared = settings.inlierThreshold * settings.inlierThreshold;
+          for (int j = 0; j < count; j++) {
+            outliers[j] = lengthSquared(residuals, j) > thresholdSquared;
+          }
+        }
+      }
+    }
+
+    if (solution == null) {
+      solution = solveFromBestStart(
+          solver,
+          packedObjectPoints,
+          packedImagePoints,
+          count,
+          width,
+          height,
+          settings.solveDistortion && count >= MIN_POINTS_WITH_DISTORTION,
+          settings.projectorProfile);
+      if (solution == null) {
+        return CalibrationData.empty();
+      }
+      solution.computeResiduals(packedObjectPoints, packedImagePoints, count, residuals);
+    }
+
+    return makeCalibrationData(solution, modelPoints, residuals, outliers, width, height, nearDist, farDist);
+  }
+
+  // Use the solved camera to prepare a projection matrix and model view matrix which can
+  // be applied to Processing graphics context. If `outliers` is null, outliers are
+  // picked from the residuals.
+  static CalibrationData makeCalibrationData(
+      CameraSolution solution,
+      PVector[] modelPoints,
+      float[] residuals,
+      boolean[] outliers,
+      int width,
+      int height,
+      float nearDist,
+      float farDist) {
+    PMatrix3D projectionMatrix = makeProjectionMatrix(
+        solution.fx, solution.fy, solution.cx, solution.cy, width, height, nearDist, farDist);
+    PMatrix3D modelViewMatrix = makeModelMatrix(solution.rotation, solution.translation);
+    CalibrationData calibrationData = new CalibrationData(projectionMatrix, modelViewMatrix, solution.rms);
+    calibrationData.width = width;
+    calibrationData.height = height;
+    calibrationData.fx = solution.fx;
+    calibrationData.fy = solution.fy;
+    calibrationData.cx = solution.cx;
+    calibrationData.cy = solution.cy;
+    calibrationData.distortion = solution.distortion.clone();
+    calibrationData.nearDist = nearDist;
+    calibrationData.farDist = farDist;
+    calibrationData.solution = solution;
+    if (outliers != null) {
+      calibrationData.setResiduals(modelPoints, residuals, outliers);
+    } else {
+      calibrationData.setResiduals(modelPoints, residuals);
+    }
+    return calibrationData;
+  }
+
+  // Solves for the camera starting from the intrinsics of `profile`, or if it's null, from
+  // a coarse to fine set of focal lengths in parallel, keeping the best solution.
+  static CameraSolution solveFromBestStart(
+      PoseSolver solver,
+      float[] packedObjectPoints,
+      float[] packedImagePoints,
+      int count,
+      int width,
+      int height,
+      boolean solveDistortion,
+      ProjectorProfile profile) {
+    if (profile != null) {
+      return solver.solve(
+          packedObjectPoints,
+          packedImagePoints,
+          count,
+          width,
+          height,
+          solveDistortion,
+          profile.getFocalLength(width, height),
+          profile.getPrincipalPointX(width, height),
+          profile.getPrincipalPointY(width, height));
+    }
+
+    double[] coarseFocalLengths = Arrays.stream(COARSE_THROW_RATIOS).map(ratio -> ratio * width).toArray();
+    CameraSolution coarse = solveFromFocalLengths(
+        solver, packedObjectPoints, packedImagePoints, count, width, height, solveDistortion, coarseFocalLengths);
+    if (coarse == null) {
+      return null;
+    }
+
+    double[] fineFocalLengths = Arrays.stream(FINE_FOCAL_LENGTH_FACTORS).map(factor -> factor * coarse.fx).toArray();
+    CameraSolution fine = solveFromFocalLengths(
+        solver, packedObjectPoints, packedImagePoints, count, width, height, solveDistortion, fineFocalLengths);
+    return fine != null && fine.rms < coarse.rms ? fine : coarse;
+  }
+
+  private static CameraSolution solveFromFocalLengths(
+      PoseSolver solver,
+      float[] packedObjectPoints,
+      float[] packedImagePoints,
+      int count,
+      int width,
+      int height,
+      boolean solveDistortion,
+      double[] focalLengths) {
+    return Arrays.stream(focalLengths)
+        .parallel()
+        .mapToObj(f -> solver.solve(
+            packedObjectPoints,
+            packedImagePoints,
+            count,
+            width,
+            height,
+            solveDistortion,
+            f,
+            width / 2.0,
+            height / 2.0))
+        .filter(Objects::nonNull)
+        .min(Comparator.comparingDouble(solution -> solution.rms))
+        .orElse(null);
+  }
+
+  // Tries solutions computed from random subsets of `MIN_POINTS` correspondences and
+  // returns the inliers of the one that fits the full set best, or null if none of the
+  // subsets could be solved. Subsets are solved in parallel, a batch at a time; after
+  // each batch the number of subsets still needed is re-estimated from the inlier ratio
+  // of the best solution so far.
+  static boolean[] findInliers(
+      PoseSolver solver,
+      float[] packedObjectPoints,
+      float[] packedImagePoints,
+      int count,
+      int width,
+      int height,
+      CalibrationSettings settings) {
+    int batchSize = Runtime.getRuntime().availableProcessors() * 2;
+    int required = settings.maxIterations;
+    Hypothesis best = null;
+
+    for (int done = 0; done < required; done += batchSize) {
+      Hypothesis batchBest = IntStream.range(done, Math.min(done + batchSize, required))
+          .parallel()
+          .mapToObj(index -> evaluateHypothesis(
+              solver, packedObjectPoints, packedImagePoints, count, width, height, settings, index))
+          .reduce(null, Hypothesis::better);
+
+      best = Hypothesis.better(best, batchBest);
+
+      if (best != null) {
+        double allInliers = Math.pow((double) best.inlierCount / count, MIN_POINTS);
+        if (allInliers >= 1) {
+          break;
+        }
+        double needed = Math.log(1 - settings.confidence) / Math.log(1 - allInliers);
+        required = (int) Math.min(settings.maxIterations, Math.ceil(needed));
+      }
+    }
+
+    if (best == null || best.inlierCount < MIN_POINTS) {
+      return null;
+    }
+    return best.inliers;
+  }
+
+  private static Hypothesis evaluateHypothesis(
+      PoseSolver solver,
+      float[] packedObjectPoints,
+      float[] packedImagePoints,
+      int count,
+      int width,
+      int height,
+      CalibrationSettings settings,
+      int index) {
+    // Each hypothesis gets its own generator so the subsets don't depend on which thread
+    // runs them
+    Random random = new Random(settings.seed * 31 + index);
+    int[] indices = new int[count];
+    for (int i = 0; i < count; i++) {
+      indices[i] = i;
+    }
+    for (int i = 0; i < MIN_POINTS; i++) {
+      int j = i + random.nextInt(count - i);
+      int swap = indices[i];
+      indices[i] = indices[j];
+      indices[j] = swap;
+    }
+
+    ProjectorProfile profile = settings.projectorProfile;
+    CameraSolution solution = solver.solve(
+        select(packedObjectPoints, 3, indices, MIN_POINTS),
+        select(packedImagePoints, 2, indices, MIN_POINTS),
+        MIN_POINTS,
+        width,
+        height,
+        false,
+        profile != null ? profile.getFocalLength(width, height) : width * radians(DEFAULT_AOV),
+        profile != null ? profile.getPrincipalPointX(width, height) : width / 2.0,
+        profile != null ? profile.getPrincipalPointY(width, height) : height / 2.0);
+    if (solution == null) {
+      return null;
+    }
+
+    float[] residuals = new float[count * 2];
+    solution.computeResiduals(packedObjectPoints, packedImagePoints, count, residuals);
+
+    // Score with a truncated squared error so that, among hypotheses with the same
+    // number of inliers, the one that fits them more tightly wins
+    float thresholdSquared = settings.inlierThreshold * settings.inlierThreshold;
+    Hypothesis hypothesis = new Hypothesis(index, new boolean[count]);
+    for (int i = 0; i < count; i++) {
+      float errorSquared = lengthSquared(residuals, i);
+      if (errorSquared <= thresholdSquared) {
+        hypothesis.inliers[i] = true;
+        hypothesis.inlierCount++;
+        hypothesis.cost += errorSquared;
+      } else {
+        hypothesis.cost += thresholdSquared;
+      }
+    }
+    return hypothesis;
+  }
+
+  private static class Hypothesis {
+    final int index;
+    final boolean[] inliers;
+    int inlierCount;
+    double cost;
+
+    Hypothesis(int index, boolean[] inliers) {
+      this.index = index;
+      this.inliers = inliers;
+    }
+
+    // Picks the better of two hypotheses, either of which may be null. Ties are broken by
+    // index so the result doesn't depend on the order hypotheses finish in.
+    static Hypothesis better(Hypothesis a, Hypothesis b) {
+      if (a == null) return b;
+      if (b == null) return a;
+      if (a.inlierCount != b.inlierCount) {
+        return a.inlierCount > b.inlierCount ? a : b;
+      }
+      if (a.cost != b.cost) {
+        return a.cost < b.cost ? a : b;
+      }
+      return a.index < b.index ? a : b;
+    }
+  }
+
+  private static float lengthSquared(float[] packed, int index) {
+    float x = packed[index * 2];
+    float y = packed[index * 2 + 1];
+    return x * x + y * y;
+  }
+
+  private static int[] indicesOf(boolean[] mask) {
+    return IntStream.range(0, mask.length).filter(i -> mask[i]).toArray();
+  }
+
+  // Gathers the first `count` entries listed in `indices` from an array packed with
+  // `stride` values per entry
+  private static float[] select(float[] packed, int stride, int[] indices, int count) {
+    float[] selected = new float[count * stride];
+    for (int i = 0; i < count; i++) {
+      System.arraycopy(packed, indices[i] * stride, selected, i * stride, stride);
+    }
+    return selected;
+  }
+
+  // Projects `count` packed (x, y, z) object points with the pinhole camera described by
+  // the intrinsics, row-major rotation `r`, translation `t` and distortion coefficients
+  // (k1, k2, p1, p2, k3), the same model used by `calibrateCamera`. Writes the offset of
+  // each projected point from the matching packed (x, y) image point into `out`.
+  static void computeResiduals(
+      float[] objectPoints,
+      float[] imagePoints,
+      int count,
+      double fx, double fy, double cx, double cy,
+      double[] r,
+      double[] t,
+      double[] dist,
+      float[] out) {
+    double k1 = dist[0], k2 = dist[1], p1 = dist[2], p2 = dist[3], k3 = dist[4];
+
+    for (int i = 0; i < count; i++) {
+      double x = objectPoints[i * 3];
+      double y = objectPoints[i * 3 + 1];
+      double z = objectPoints[i * 3 + 2];
+
+      double xc = r[0] * x + r[1] * y + r[2] * z + t[0];
+      double yc = r[3] * x + r[4] * y + r[5] * z + t[1];
+      double zc = r[6] * x + r[7] * y + r[8] * z + t[2];
+
+      double xn = xc / zc;
+      double yn = yc / zc;
+      double r2 = xn * xn + yn * yn;
+      double radial = 1 + r2 * (k1 + r2 * (k2 + r2 * k3));
+      double xd = xn * radial + 2 * p1 * xn * yn + p2 * (r2 + 2 * xn * xn);
+      double yd = yn * radial + p1 * (r2 + 2 * yn * yn) + 2 * p2 * xn * yn;
+
+      out[i * 2] = (float) (fx * xd + cx - imagePoints[i * 2]);
+      out[i * 2 + 1] = (float) (fy * yd + cy - imagePoints[i * 2 + 1]);
+    }
+  }
+
+  // Moves the near and far planes of a calibration to just enclose the box from
+  // `boundsMin` to `boundsMax` (in model coordinates) as seen by the solved camera, with
+  // `margin` extra room as a fraction of the distance on either side. This keeps as much
+  // depth precision as possible without clipping the model. Leaves the calibration as is
+  // if it isn't ready or the box is entirely behind the projector.
+  public static void fitDepthRange(CalibrationData calibrationData, PVector boundsMin, PVector boundsMax, float margin) {
+    if (!calibrationData.isReady()) {
+      return;
+    }
+
+    float minDepth = Float.POSITIVE_INFINITY;
+    float maxDepth = Float.NEGATIVE_INFINITY;
+    PVector corner = new PVector();
+    PVector transformed = new PVector();
+    for (int i = 0; i < 8; i++) {
+      corner.set(
+          (i & 1) == 0 ? boundsMin.x : boundsMax.x,
+          (i & 2) == 0 ? boundsMin.y : boundsMax.y,
+          (i & 4) == 0 ? boundsMin.z : boundsMax.z);
+      calibrationData.modelViewMatrix.mult(corner, transformed);
+      minDepth = Math.min(minDepth, transformed.z);
+      maxDepth = Math.max(maxDepth, transformed.z);
+    }
+
+    if (maxDepth <= 0) {
+      return;
+    }
 
+    float farDist = maxDepth * (1 + margin);
+    float nearDist = Math.max(minDepth * (1 - margin), farDist * MIN_NEAR_FAR_RATIO);
+
+    calibrationData.nearDist = nearDist;
+    calibrationData.farDist = farDist;
+    calibrationData.projectionMatrix = makeProjectionMatrix(
+        calibrationData.fx,
+        calibrationData.fy,
+        calibrationData.cx,
+        calibrationData.cy,
+        calibrationData.width,
+        calibrationData.height,
+        nearDist,
+        farDist);
+  }
+
+  // Rescales a calibration to a `width` by `height` image of the same projector, e.g. to
+  // render at a different resolution than it was made at. The axes scale separately, so
+  // the image can have a different aspect ratio; its pixels just stop being square.
+  // Residuals are scaled along with the image. Leaves the calibration as is if it isn't
+  // ready.
+  public static void resize(CalibrationData calibrationData, int width, int height) {
+    if (!calibrationData.isReady()) {
+      return;
+    }
+
+    double scaleX = (double) width / calibrationData.width;
+    double scaleY = (double) height / calibrationData.height;
+    calibrationData.fx *= scaleX;
+    calibrationData.fy *= scaleY;
+    calibrationData.cx *= scaleX;
+    calibrationData.cy *= scaleY;
+    calibrationData.width = width;
+    calibrationData.height = height;
+
+    float[] residuals = calibrationData.residuals;
+    if (residuals != null && residuals.length > 0) {
+      double squaredSum = 0;
+      for (int i = 0; i < residuals.length; i += 2) {
+        residuals[i] *= scaleX;
+        residuals[i + 1] *= scaleY;
+        squaredSum += residuals[i] * residuals[i] + residuals[i + 1] * residuals[i + 1];
+      }
+      calibrationData.reprojectionError = Math.sqrt(squaredSum / (residuals.length / 2));
+    }
+
+    // The solver's own description is in the pixels of the old size, so it can no longer
+    // warm start solves at this one
+    calibrationData.solution = null;
+
+    calibrationData.projectionMatrix = makeProjectionMatrix(
+        calibrationData.fx,
+        calibrationData.fy,
+        calibrationData.cx,
+        calibrationData.cy,
+        width,
+        height,
+        calibrationData.nearDist,
+        calibrationData.farDist);
+  }
+
+  // Builds a Processing projection matrix matching a pinhole camera with the given
+  // intrinsics, for a `width` by `height` image, clipped to `nearDist` and `farDist`
+  public static PMatrix3D makeProjectionMatrix(
+      double fx, double fy,
+      double cx, double cy,
+      int width, int height,
+      float nearDist, float farDist) {
     float left = (float) (nearDist * (-cx) / fx);
     float right = (float) (nearDist * (width - cx) / fx);
     float bottom = (float) (nearDist * (cy) / fy);
@@ -168,29 +632,23 @@ public class Calibration {
         0.0F, 0.0F, -1.0F, 0.0F);
 
     projectionMatrix.apply(frustrum);
-
-    PMatrix3D modelViewMatrix = makeModelMatrix(rotation, translation);
-    return new CalibrationData(projectionMatrix, modelViewMatrix);
+    return projectionMatrix;
   }
 
   // Helper function that takes the rotation and translation vector produced by
-  // `calibrateCamera` and returns a Processing matrix representing those transformations
+  // `calibrateCamera` and returns a Processing matrix representing those transformations.
+  // Needs the OpenCV natives.
   public static PMatrix3D makeModelMatrix(Mat rotationVector, Mat translation) {
-    Mat rotationMatrix = new Mat();
-    Rodrigues(rotationVector, rotationMatrix);
-
-    double[] tm = new double[3];
-    translation.get(0, 0, tm);
-
-    double[] rm = new double[16];
-    rotationMatrix.get(0, 0, rm);
-
-    PMatrix3D matrix = new PMatrix3D(
-        (float) rm[0], (float) rm[3], (float) rm[6], 0.0f,
-        (float) rm[1], (float) rm[4], (float) rm[7], 0.0f,
-        (float) rm[2], (float) rm[5], (float) rm[8], 0.0f,
-        (float) tm[0], (float) tm[1], (float) tm[2], 1.0f);
-    matrix.transpose();
-    return matrix;
+    return OpenCvSolver.makeModelMatrix(rotationVector, translation);
+  }
+
+  // Returns a Processing matrix that applies a row-major rotation matrix and then a
+  // translation
+  public static PMatrix3D makeModelMatrix(double[] rotation, double[] translation) {
+    return new PMatrix3D(
+        (float) rotation[0], (float) rotation[1], (float) rotation[2], (float) translation[0],
+        (float) rotation[3], (float) rotation[4], (float) rotation[5], (float) translation[1],
+        (float) rotation[6], (float) rotation[7], (float) rotation[8], (float) translation[2],
+        0.0f, 0.0f, 0.0f, 1.0f);
   }
 }
@@ -1,6 +1,10 @@
 package spacefiller.modelmapper;
 
 import processing.core.PMatrix3D;
+import processing.core.PVector;
+
+import java.util.HashMap;
+import java.util.Map;
 
 // A simple data only class that represents calibration parameters which can be applied
 // to a graphics context in order to achieve projection mapping alignment.
@@ -8,11 +12,53 @@ public class CalibrationData {
   public PMatrix3D projectionMatrix;
   public PMatrix3D modelViewMatrix;
 
+  // Root mean square distance, in pixels, between where the calibration projects the
+  // model points and where they were placed. NaN if unknown.
+  public double reprojectionError = Double.NaN;
+
+  // The camera intrinsics the calibration was solved with, for a `width` by `height`
+  // pixel image: focal lengths and principal point in pixels, and lens distortion
+  // coefficients (k1, k2, p1, p2, k3). `distortion` is null if unknown.
+  public int width;
+  public int height;
+  public double fx;
+  public double fy;
+  public double cx;
+  public double cy;
+  public double[] distortion;
+
+  // Distances to the near and far planes `projectionMatrix` was built with
+  public float nearDist;
+  public float farDist;
+
+  // Correspondences are considered outliers when their residual is larger than both
+  // `OUTLIER_MIN_PIXELS` and `OUTLIER_RMS_FACTOR` times the reprojection error.
+  public static final float OUTLIER_MIN_PIXELS = 2f;
+  public static final float OUTLIER_RMS_FACTOR = 3f;
+
+  // The model points the calibration was solved from, and for each of them the offset in
+  // pixels from where it was placed to where the calibration projects it, packed as
+  // (dx, dy) pairs in the same order. Null if unknown.
+  public PVector[] modelPoints;
+  public float[] residuals;
+  public boolean[] outliers;
+
+  // The solver's own description of the camera, used to warm start later solves. Null if
+  // the calibration wasn't produced by `Calibration`.
+  CameraSolution solution;
+
+  private Map<PVector, Integer> modelPointIndices;
+
   public CalibrationData(PMatrix3D projectionMatrix, PMatrix3D modelViewMatrix) {
     this.projectionMatrix = projectionMatrix;
     this.modelViewMatrix = modelViewMatrix;
   }
 
+  public CalibrationData(PMatrix3D projectionMatrix, PMatrix3D modelViewMatrix, double reprojectionError) {
+    this(projectionMatrix, modelViewMatrix);
+    this.reprojectionError = reprojectionError;
+  }
+
   public CalibrationData() {
   }
 
@@ -20,6 +66,81 @@ public class CalibrationData {
     return new CalibrationData();
   }
 
+  // Stores the residuals and flags correspondences whose residual is far above the
+  // reprojection error as outliers
+  public void setResiduals(PVector[] modelPoints, float[] residuals) {
+    if (Double.isNaN(reprojectionError) && modelPoints.length > 0) {
+      double squaredSum = 0;
+      for (int i = 0; i < modelPoints.length; i++) {
+        squaredSum += residuals[i * 2] * residuals[i * 2] + residuals[i * 2 + 1] * residuals[i * 2 + 1];
+      }
+      reprojectionError = Math.sqrt(squaredSum / modelPoints.length);
+    }
+
+    boolean[] outliers = new boolean[modelPoints.length];
+    float threshold = Math.max(OUTLIER_MIN_PIXELS, OUTLIER_RMS_FACTOR * (float) reprojectionError);
+    for (int i = 0; i < modelPoints.length; i++) {
+      float dx = residuals[i * 2];
+      float dy = residuals[i * 2 + 1];
+      outliers[i] = dx * dx + dy * dy > threshold * threshold;
+    }
+    setResiduals(modelPoints, residuals, outliers);
+  }
+
+  // Stores the residuals along with outlier flags decided by the solver, e.g. the
+  // correspondences rejected by a robust solve
+  public void setResiduals(PVector[] modelPoints, float[] residuals, boolean[] outliers) {
+    this.modelPoints = modelPoints;
+    this.residuals = residuals;
+    this.outliers = outliers;
+    this.modelPointIndices = null;
+  }
+
+  // Returns the residual of the correspondence for `modelPoint`, or null if the
+  // calibration wasn't solved with that point.
+  public PVector getResidual(PVector modelPoint) {
+    int index = indexOf(modelPoint);
+    return index < 0 ? null : new PVector(residuals[index * 2], residuals[index * 2 + 1]);
+  }
+
+  public boolean isOutlier(PVector modelPoint) {
+    int index = indexOf(modelPoint);
+    return index >= 0 && outliers[index];
+  }
+
+  public int getOutlierCount() {
+    int count = 0;
+    if (outliers != null) {
+      for (boolean outlier : outliers) {
+        if (outlier) count++;
+      }
+    }
+    return count;
+  }
+
+  private int indexOf(PVector modelPoint) {
+    if (modelPoints == null) {
+      return -1;
+    }
+    if (modelPointIndices == null) {
+      modelPointIndices = new HashMap<>();
+      for (int i = 0; i < modelPoints.length; i++) {
+        modelPointIndices.put(modelPoints[i], i);
+      }
+    }
+    Integer index = modelPointIndices.get(modelPoint);
+    return index == null ? -1 : index;
+  }
+
+  public boolean hasDistortion() {
+    if (distortion != null) {
+      for (double coefficient : distortion) {
+        if (coefficient != 0) return true;
+      }
+    }
+    return false;
+  }
+
   public boolean isReady() {
     return projectionMatrix != null && modelViewMatrix != null;
   }
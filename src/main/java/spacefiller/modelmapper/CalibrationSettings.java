@@ -0,0 +1,51 @@
+package spacefiller.modelmapper;
+
+// A simple data only class holding the options that control how `Calibration` solves for
+// a calibration.
+public class CalibrationSettings {
+  public enum Backend {
+    // OpenCV if its natives can be loaded, Java otherwise
+    AUTO,
+    OPENCV,
+    // Pure Java solver, needs no natives
+    JAVA
+  }
+
+  // Which solver to calibrate with
+  public Backend backend = Backend.AUTO;
+
+  // When set, the calibration is solved from random minimal subsets of the
+  // correspondences in parallel, keeping the solution most of the correspondences agree
+  // with, so a few misplaced points don't skew the result. Correspondences that don't
+  // agree with it are reported as outliers and left out of the final solve.
+  public boolean robust = false;
+
+  // Largest reprojection error, in pixels, for a correspondence to count as an inlier
+  // in robust mode
+  public float inlierThreshold = 8f;
+
+  // Upper bound on the number of subsets tried in robust mode. Fewer are tried once the
+  // best solution found so far has enough inliers to be trusted with `confidence`.
+  public int maxIterations = 500;
+  public double confidence = 0.99;
+
+  // Seed for choosing subsets, so that robust solves are repeatable
+  public long seed = 0;
+
+  // When set, radial (k1, k2) and tangential (p1, p2) lens distortion are solved for
+  // along with the focal length and principal point, and the rendered frame is warped to
+  // compensate for it. Needs at least `Calibration.MIN_POINTS_WITH_DISTORTION`
+  // correspondences; with fewer, distortion is left at zero.
+  public boolean solveDistortion = false;
+
+  // The lens and resolution of the projector, used as the starting point for the solve.
+  // If null, the solve is started from a range of focal lengths and the best result is
+  // kept, which is slower.
+  public ProjectorProfile projectorProfile = null;
+
+  // When set, ModelMapper fits the near and far planes to the model's bounding box after
+  // every solve, leaving `depthMargin` (a fraction of the distance) of room on either
+  // side. Otherwise the fixed default planes are used.
+  public boolean fitDepthRange = true;
+  public float depthMargin = 0.1f;
+}
@@ -0,0 +1,38 @@
+package spacefiller.modelmapper;
+
+// The camera parameters solved for by a `PoseSolver`: pinhole intrinsics, distortion
+// coefficients (k1, k2, p1, p2, k3) and pose. The rotation is kept both as a rotation
+// vector (axis times angle, as OpenCV's Rodrigues form) and as a row-major matrix.
+class CameraSolution {
+  double fx;
+  double fy;
+  double cx;
+  double cy;
+  double[] distortion = new double[5];
+
+  double[] rotationVector = new double[3];
+  double[] rotation = new double[9];
+  double[] translation = new double[3];
+
+  // RMS reprojection error over the correspondences the solution was computed from, or
+  // NaN if the solver didn't report one
+  double rms = Double.NaN;
+
+  // Copy of this solution's intrinsics and distortion, with no pose
+  CameraSolution withoutPose() {
+    CameraSolution solution = new CameraSolution();
+    solution.fx = fx;
+    solution.fy = fy;
+    solution.cx = cx;
+    solution.cy = cy;
+    solution.distortion = distortion.clone();
+    return solution;
+  }
+
+  // Writes the (dx, dy) offset from each of the `count` packed image points to where this
+  // camera projects the matching packed object point into `out`
+  void computeResiduals(float[] objectPoints, float[] imagePoints, int count, float[] out) {
+    Calibration.computeResiduals(
+        objectPoints, imagePoints, count, fx, fy, cx, cy, rotation, translation, distortion, out);
+  }
+}
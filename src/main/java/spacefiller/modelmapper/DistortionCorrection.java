@@ -0,0 +1,138 @@
+package spacefiller.modelmapper;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+import processing.opengl.PShader;
+
+import java.util.Arrays;
+
+import static processing.core.PConstants.ARGB;
+
+// Warps a rendered frame so that, once the projector's lens distorts it, the model lines
+// up with the calibration. Rendering with the calibration's projection matrix produces an
+// ideal pinhole image; for every projector pixel this looks up which pixel of that image
+// the lens will actually show there.
+//
+// The lookup is computed on the CPU once per calibration, on a coarse grid, and stored in
+// a small texture. The shader interpolates it per pixel, so applying the correction is a
+// single full screen pass. Each texel holds the (dx, dy) offset in pixels as 16-bit fixed
+// point values, with the high bytes in red and green and the low bytes in blue and alpha;
+// bilinear filtering interpolates both halves linearly, so filtered values still decode
+// correctly.
+class DistortionCorrection {
+  // Grid spacing of the lookup texture in pixels
+  private static final int STEP = 8;
+
+  // Largest offset, in pixels, the lookup texture can store
+  private static final float MAX_OFFSET = 256f;
+
+  private static final int UNDISTORT_ITERATIONS = 20;
+
+  private final PApplet parent;
+  private final PShader shader;
+  private CalibrationData calibrationData;
+  private PImage lookup;
+
+  DistortionCorrection(PApplet parent) {
+    this.parent = parent;
+    this.shader = parent.loadShader(IO.extractResourceToFile("/distortion.frag.glsl"));
+  }
+
+  // Rebuilds the lookup texture if the intrinsics of `calibrationData` differ from those
+  // of the calibration it was last built for. Calibrations without distortion turn the
+  // correction off.
+  void update(CalibrationData calibrationData) {
+    if (this.calibrationData != null && sameIntrinsics(calibrationData, this.calibrationData)) {
+      return;
+    }
+    this.calibrationData = calibrationData;
+
+    if (!calibrationData.isReady() || !calibrationData.hasDistortion()) {
+      lookup = null;
+      return;
+    }
+
+    int columns = calibrationData.width / STEP + 2;
+    int rows = calibrationData.height / STEP + 2;
+    lookup = parent.createImage(columns, rows, ARGB);
+    lookup.loadPixels();
+
+    double[] undistorted = new double[2];
+    for (int row = 0; row < rows; row++) {
+      for (int column = 0; column < columns; column++) {
+        double x = column * STEP;
+        double y = row * STEP;
+        undistort(calibrationData, x, y, undistorted);
+        int dx = encode(undistorted[0] - x);
+        int dy = encode(undistorted[1] - y);
+        lookup.pixels[row * columns + column] =
+            (dy & 0xFF) << 24 | (dx >> 8) << 16 | (dy >> 8) << 8 | (dx & 0xFF);
+      }
+    }
+    lookup.updatePixels();
+
+    shader.set("lookup", lookup);
+    shader.set("lookupSize", (float) columns, (float) rows);
+    shader.set("lookupStep", (float) STEP);
+    shader.set("resolution", (float) calibrationData.width, (float) calibrationData.height);
+    shader.set("maxOffset", MAX_OFFSET);
+  }
+
+  boolean isActive() {
+    return lookup != null;
+  }
+
+  // Warps the current contents of `canvas`. Does nothing if the calibration has no
+  // distortion.
+  void apply(PGraphics canvas) {
+    if (lookup != null) {
+      canvas.filter(shader);
+    }
+  }
+
+  // Whether two calibrations distort the same way. Moving a single point while dragging
+  // only changes the pose, so this saves rebuilding the lookup on every drag event.
+  private static boolean sameIntrinsics(CalibrationData a, CalibrationData b) {
+    return a.isReady() == b.isReady()
+        && a.width == b.width
+        && a.height == b.height
+        && a.fx == b.fx
+        && a.fy == b.fy
+        && a.cx == b.cx
+        && a.cy == b.cy
+        && Arrays.equals(a.distortion, b.distortion);
+  }
+
+  private static int encode(double offset) {
+    double normalized = Math.max(-1, Math.min(1, offset / MAX_OFFSET)) * 0.5 + 0.5;
+    return (int) Math.round(normalized * 65535);
+  }
+
+  // Finds the pixel of an ideal pinhole image that the lens moves to pixel (x, y), by
+  // inverting the distortion model with fixed point iteration, like OpenCV's
+  // `undistortPoints`.
+  private static void undistort(CalibrationData data, double x, double y, double[] out) {
+    double k1 = data.distortion[0];
+    double k2 = data.distortion[1];
+    double p1 = data.distortion[2];
+    double p2 = data.distortion[3];
+    double k3 = data.distortion[4];
+
+    double x0 = (x - data.cx) / data.fx;
+    double y0 = (y - data.cy) / data.fy;
+    double xn = x0;
+    double yn = y0;
+    for (int i = 0; i < UNDISTORT_ITERATIONS; i++) {
+      double r2 = xn * xn + yn * yn;
+      double inverseRadial = 1 / (1 + r2 * (k1 + r2 * (k2 + r2 * k3)));
+      double dx = 2 * p1 * xn * yn + p2 * (r2 + 2 * xn * xn);
+      double dy = p1 * (r2 + 2 * yn * yn) + 2 * p2 * xn * yn;
+      xn = (x0 - dx) * inverseRadial;
+      yn = (y0 - dy) * inverseRadial;
+    }
+
+    out[0] = xn * data.fx + data.cx;
+    out[1] = yn * data.fy + data.cy;
+  }
+}
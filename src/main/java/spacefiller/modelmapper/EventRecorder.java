@@ -0,0 +1,93 @@
+package spacefiller.modelmapper;
+
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+import spacefiller.peasy.CameraState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Writes the mouse and key events seen by a ModelMapper to a compact binary log so that a
+// calibration session can be reproduced later with `EventReplay`.
+//
+// The log starts with a header (magic number and format version) followed by one record
+// per event. Every record starts with a type byte and a timestamp in nanoseconds relative
+// to the start of the recording. If the camera moved since the previous record, the type
+// byte has `CAMERA_FLAG` set and the camera state follows the event payload, in the
+// encoding of `CameraState.writeTo`.
+public class EventRecorder {
+  static final int MAGIC = 0x4D4D4556; // "MMEV"
+  static final short VERSION = 2;
+
+  static final byte MOUSE = 0;
+  static final byte KEY = 1;
+  static final byte CAMERA_FLAG = (byte) 0x80;
+
+  private final DataOutputStream out;
+  private final long startTime;
+  private CameraState lastCameraState;
+  private int eventCount;
+
+  public EventRecorder(String path) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+    this.startTime = System.nanoTime();
+    out.writeInt(MAGIC);
+    out.writeShort(VERSION);
+  }
+
+  public void record(MouseEvent event, CameraState cameraState) throws IOException {
+    writeHeader(MOUSE, cameraState);
+    out.writeInt(event.getAction());
+    out.writeInt(event.getModifiers());
+    out.writeInt(event.getX());
+    out.writeInt(event.getY());
+    out.writeInt(event.getButton());
+    out.writeInt(event.getCount());
+    writeCameraState(cameraState);
+    eventCount++;
+  }
+
+  public void record(KeyEvent event, CameraState cameraState) throws IOException {
+    writeHeader(KEY, cameraState);
+    out.writeInt(event.getAction());
+    out.writeInt(event.getModifiers());
+    out.writeChar(event.getKey());
+    out.writeInt(event.getKeyCode());
+    writeCameraState(cameraState);
+    eventCount++;
+  }
+
+  public int getEventCount() {
+    return eventCount;
+  }
+
+  public void close() throws IOException {
+    out.close();
+  }
+
+  private void writeHeader(byte type, CameraState cameraState) throws IOException {
+    boolean cameraChanged = !sameState(cameraState, lastCameraState);
+    out.writeByte(cameraChanged ? type | CAMERA_FLAG : type);
+    out.writeLong(System.nanoTime() - startTime);
+  }
+
+  private void writeCameraState(CameraState cameraState) throws IOException {
+    if (sameState(cameraState, lastCameraState)) {
+      return;
+    }
+
+    cameraState.writeTo(out);
+    lastCameraState = cameraState;
+  }
+
+  // Rotations and vectors are immutable and PeasyCam replaces them whenever the camera
+  // moves, so comparing references is enough to tell whether the camera changed.
+  private static boolean sameState(CameraState a, CameraState b) {
+    return a != null && b != null
+        && a.getRotation() == b.getRotation()
+        && a.getCenter() == b.getCenter()
+        && a.getDistance() == b.getDistance();
+  }
+}
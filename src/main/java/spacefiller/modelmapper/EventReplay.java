@@ -0,0 +1,163 @@
+package spacefiller.modelmapper;
+
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+import spacefiller.peasy.CameraState;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Feeds an event log written by `EventRecorder` back into a ModelMapper and measures how
+// long the mapper takes to handle each event (picking, solving and persisting the
+// calibration). Events can be replayed at their original pace or as fast as possible.
+public class EventReplay {
+  public static Result replay(ModelMapper mapper, String path, boolean realTime) throws IOException {
+    Result result = new Result();
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+      if (in.readInt() != EventRecorder.MAGIC) {
+        throw new IOException("Not a ModelMapper event log: " + path);
+      }
+      short version = in.readShort();
+      if (version != EventRecorder.VERSION) {
+        throw new IOException("Unsupported event log version " + version + ": " + path);
+      }
+
+      long replayStart = System.nanoTime();
+      while (true) {
+        int header;
+        try {
+          header = in.readUnsignedByte();
+        } catch (EOFException e) {
+          break;
+        }
+        long timestamp = in.readLong();
+        boolean hasCamera = (header & EventRecorder.CAMERA_FLAG) != 0;
+        byte type = (byte) (header & ~EventRecorder.CAMERA_FLAG);
+
+        if (type == EventRecorder.MOUSE) {
+          int action = in.readInt();
+          int modifiers = in.readInt();
+          int x = in.readInt();
+          int y = in.readInt();
+          int button = in.readInt();
+          int count = in.readInt();
+          CameraState cameraState = hasCamera ? CameraState.readFrom(in) : null;
+          MouseEvent event = new MouseEvent(null, timestamp / 1000000, action, modifiers, x, y, button, count);
+
+          waitUntil(realTime, replayStart, timestamp);
+          if (cameraState != null) {
+            mapper.replayCameraState(cameraState);
+          }
+          long start = System.nanoTime();
+          mapper.mouseEvent(event);
+          result.mouseLatencies.add(System.nanoTime() - start);
+        } else if (type == EventRecorder.KEY) {
+          int action = in.readInt();
+          int modifiers = in.readInt();
+          char key = in.readChar();
+          int keyCode = in.readInt();
+          CameraState cameraState = hasCamera ? CameraState.readFrom(in) : null;
+          KeyEvent event = new KeyEvent(null, timestamp / 1000000, action, modifiers, key, keyCode);
+
+          waitUntil(realTime, replayStart, timestamp);
+          if (cameraState != null) {
+            mapper.replayCameraState(cameraState);
+          }
+          long start = System.nanoTime();
+          mapper.keyEvent(event);
+          result.keyLatencies.add(System.nanoTime() - start);
+        } else {
+          throw new IOException("Corrupt event log, unknown record type " + type + ": " + path);
+        }
+      }
+      result.totalTime = System.nanoTime() - replayStart;
+    }
+
+    return result;
+  }
+
+  private static void waitUntil(boolean realTime, long replayStart, long timestamp) {
+    if (!realTime) {
+      return;
+    }
+    long remaining = timestamp - (System.nanoTime() - replayStart);
+    if (remaining > 0) {
+      try {
+        Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  public static class Result {
+    private final Latencies mouseLatencies = new Latencies();
+    private final Latencies keyLatencies = new Latencies();
+    private long totalTime;
+
+    public Latencies getMouseLatencies() {
+      return mouseLatencies;
+    }
+
+    public Latencies getKeyLatencies() {
+      return keyLatencies;
+    }
+
+    public long getTotalTime() {
+      return totalTime;
+    }
+
+    @Override
+    public String toString() {
+      return "Replay{mouse=" + mouseLatencies + ", key=" + keyLatencies
+          + ", total=" + String.format("%.2fms", totalTime / 1e6) + '}';
+    }
+  }
+
+  // Per-event handling times in nanoseconds
+  public static class Latencies {
+    private long[] values = new long[256];
+    private int count;
+
+    void add(long value) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, count * 2);
+      }
+      values[count++] = value;
+    }
+
+    public int getCount() {
+      return count;
+    }
+
+    public long[] getValues() {
+      return Arrays.copyOf(values, count);
+    }
+
+    // Returns the latency in nanoseconds below which `percentile` percent of events fall
+    public long getPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = getValues();
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+      return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    @Override
+    public String toString() {
+      return String.format("{n=%d, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms}",
+          count,
+          getPercentile(50) / 1e6,
+          getPercentile(90) / 1e6,
+          getPercentile(99) / 1e6,
+          getPercentile(100) / 1e6);
+    }
+  }
+}
@@ -1,16 +1,26 @@
 package spacefiller.modelmapper;
 
+import processing.core.PShape;
+import processing.core.PVector;
+
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class IO {
   public static String[] getFileContents(String filename) {
@@ -58,4 +68,72 @@ public class IO {
       return null;
     }
   }
+
+  // Writes the model space to projection space point mapping that makes up a calibration,
+  // creating parent directories as needed.
+  public static void writePointMapping(Map<PVector, PVector> pointMapping, String path) throws IOException {
+    Path parentDirectory = Paths.get(path).getParent();
+    if (parentDirectory != null) {
+      Files.createDirectories(parentDirectory);
+    }
+    try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+      out.writeObject(pointMapping);
+    }
+  }
+
+  // Like `writePointMapping(pointMapping, path)`, also storing the `Shapes.hashGeometry`
+  // of the model the calibration was made against. The hash goes after the point mapping,
+  // so readers that don't know about it still read the file.
+  public static void writePointMapping(Map<PVector, PVector> pointMapping, long geometryHash, String path) throws IOException {
+    Path parentDirectory = Paths.get(path).getParent();
+    if (parentDirectory != null) {
+      Files.createDirectories(parentDirectory);
+    }
+    try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(path))) {
+      out.writeObject(pointMapping);
+      out.writeLong(geometryHash);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Map<PVector, PVector> readPointMapping(String path) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+      return (Map<PVector, PVector>) in.readObject();
+    }
+  }
+
+  // A calibration as `writePointMapping` saved it
+  public static class SavedCalibration {
+    public final Map<PVector, PVector> pointMapping;
+    // `Shapes.hashGeometry` of the model it was made against, or null if it was saved
+    // without one
+    public final Long geometryHash;
+
+    SavedCalibration(Map<PVector, PVector> pointMapping, Long geometryHash) {
+      this.pointMapping = pointMapping;
+      this.geometryHash = geometryHash;
+    }
+
+    // The point mapping, with its model points where `model` draws them. Calibrations
+    // saved without a geometry hash predate transforms being applied to picked vertices,
+    // so their points on transformed shapes are moved to where the transforms put them.
+    public Map<PVector, PVector> getPointMapping(PShape model) {
+      return geometryHash != null ? pointMapping : Shapes.applyTransforms(model, pointMapping);
+    }
+  }
+
+  // Reads the point mapping and geometry hash of a calibration in one pass
+  @SuppressWarnings("unchecked")
+  public static SavedCalibration readCalibration(String path) throws IOException, ClassNotFoundException {
+    try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(path))) {
+      Map<PVector, PVector> pointMapping = (Map<PVector, PVector>) in.readObject();
+      Long geometryHash;
+      try {
+        geometryHash = in.readLong();
+      } catch (EOFException e) {
+        geometryHash = null;
+      }
+      return new SavedCalibration(pointMapping, geometryHash);
+    }
+  }
 }
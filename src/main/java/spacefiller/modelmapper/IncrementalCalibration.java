@@ -0,0 +1,168 @@
+package spacefiller.modelmapper;
+
+import processing.core.PVector;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps the inputs of the last calibration around so that moving a single
+// correspondence, e.g. while the operator drags it, doesn't re-solve from scratch.
+//
+// The correspondences are kept in packed arrays, with a map from model point to row. A
+// full solve (`solve`) repacks everything and solves for intrinsics and pose. After that,
+// `update` overwrites the one row that changed, in the arrays and in the solver's own
+// copy of the points, and only re-solves the pose, warm started from the previous one.
+class IncrementalCalibration {
+  private final int width;
+  private final int height;
+
+  private PVector[] modelPoints = new PVector[16];
+  private float[] objectPoints = new float[16 * 3];
+  private float[] imagePoints = new float[16 * 2];
+  private int count;
+  private final Map<PVector, Integer> rows = new HashMap<>();
+
+  // Pose refinement only uses the rows the last full solve kept; in robust mode, that
+  // leaves out the outliers. `refinementRows` maps each row to its row in the refinement, or
+  // -1 if it is left out.
+  private int[] refinementRows = new int[16];
+  private PoseSolver solver;
+  private PoseSolver.Refinement refinement;
+  private boolean robust;
+
+  private CalibrationData last;
+
+  IncrementalCalibration(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  // Solves from scratch for all of `pointMapping`
+  CalibrationData solve(Map<PVector, PVector> pointMapping, CalibrationSettings settings) {
+    rows.clear();
+    count = 0;
+    for (Map.Entry<PVector, PVector> entry : pointMapping.entrySet()) {
+      append(entry.getKey(), entry.getValue());
+    }
+    return solveFull(settings);
+  }
+
+  // Moves the correspondence for `modelPoint` to `imagePoint` and re-solves. Only the
+  // pose is re-solved, unless this adds a new correspondence or there's no previous
+  // solution to start from.
+  CalibrationData update(PVector modelPoint, PVector imagePoint, CalibrationSettings settings) {
+    Integer row = rows.get(modelPoint);
+    if (row == null) {
+      append(modelPoint, imagePoint);
+      return solveFull(settings);
+    }
+
+    imagePoints[row * 2] = imagePoint.x;
+    imagePoints[row * 2 + 1] = imagePoint.y;
+
+    if (last == null || last.solution == null) {
+      return solveFull(settings);
+    }
+
+    if (refinementRows[row] < 0) {
+      // The operator is moving a point the last solve left out; bring it back in
+      refinementRows[row] = 0;
+      buildRefinement();
+    } else {
+      refinement.setImagePoint(refinementRows[row], imagePoint.x, imagePoint.y);
+    }
+
+    CameraSolution solution = refinement.refine(last.solution);
+    if (solution == null) {
+      return solveFull(settings);
+    }
+
+    float[] residuals = new float[count * 2];
+    solution.computeResiduals(objectPoints, imagePoints, count, residuals);
+
+    boolean[] outliers = null;
+    if (robust) {
+      outliers = new boolean[count];
+      for (int i = 0; i < count; i++) {
+        outliers[i] = refinementRows[i] < 0;
+      }
+    }
+
+    last = Calibration.makeCalibrationData(
+        solution,
+        Arrays.copyOf(modelPoints, count),
+        residuals,
+        outliers,
+        width,
+        height,
+        Calibration.DEFAULT_NEAR_DIST,
+        Calibration.DEFAULT_FAR_DIST);
+    return last;
+  }
+
+  private CalibrationData solveFull(CalibrationSettings settings) {
+    last = Calibration.calibrate(
+        Arrays.copyOf(modelPoints, count),
+        Arrays.copyOf(objectPoints, count * 3),
+        Arrays.copyOf(imagePoints, count * 2),
+        count,
+        width,
+        height,
+        Calibration.DEFAULT_NEAR_DIST,
+        Calibration.DEFAULT_FAR_DIST,
+        settings);
+
+    robust = settings.robust;
+    solver = Calibration.getSolver(settings);
+    if (last.solution != null) {
+      for (int i = 0; i < count; i++) {
+        refinementRows[i] = robust && last.outliers[i] ? -1 : 0;
+      }
+      buildRefinement();
+    }
+    return last;
+  }
+
+  private void append(PVector modelPoint, PVector imagePoint) {
+    if (count == modelPoints.length) {
+      int capacity = count * 2;
+      modelPoints = Arrays.copyOf(modelPoints, capacity);
+      objectPoints = Arrays.copyOf(objectPoints, capacity * 3);
+      imagePoints = Arrays.copyOf(imagePoints, capacity * 2);
+      refinementRows = Arrays.copyOf(refinementRows, capacity);
+    }
+
+    modelPoints[count] = modelPoint;
+    objectPoints[count * 3] = modelPoint.x;
+    objectPoints[count * 3 + 1] = modelPoint.y;
+    objectPoints[count * 3 + 2] = modelPoint.z;
+    imagePoints[count * 2] = imagePoint.x;
+    imagePoints[count * 2 + 1] = imagePoint.y;
+    refinementRows[count] = -1;
+    rows.put(modelPoint, count);
+    count++;
+  }
+
+  // Packs the rows that aren't left out into a new refinement and numbers them
+  private void buildRefinement() {
+    int activeCount = 0;
+    for (int i = 0; i < count; i++) {
+      if (refinementRows[i] >= 0) {
+        refinementRows[i] = activeCount++;
+      }
+    }
+
+    float[] activeObjects = new float[activeCount * 3];
+    float[] activeImages = new float[activeCount * 2];
+    for (int i = 0; i < count; i++) {
+      int matrixRow = refinementRows[i];
+      if (matrixRow >= 0) {
+        System.arraycopy(objectPoints, i * 3, activeObjects, matrixRow * 3, 3);
+        System.arraycopy(imagePoints, i * 2, activeImages, matrixRow * 2, 2);
+      }
+    }
+
+    refinement = solver.createRefinement(activeObjects, activeImages, activeCount);
+  }
+}
@@ -0,0 +1,517 @@
+package spacefiller.modelmapper;
+
+import org.apache.commons.math3.exception.MathIllegalStateException;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer;
+import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
+import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
+import org.apache.commons.math3.fitting.leastsquares.MultivariateJacobianFunction;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.QRDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.commons.math3.util.Pair;
+
+// Solves in plain Java, so calibration works without the OpenCV natives. The pose (and,
+// for a full solve, a second set of starting intrinsics) comes from a direct linear
+// transform (DLT) of the correspondences, which is then refined by minimizing the
+// reprojection error with commons-math3's Levenberg-Marquardt optimizer, using the same
+// camera model as OpenCV.
+//
+// The DLT needs the object points to not all lie on one plane.
+class JavaSolver implements PoseSolver {
+  static final JavaSolver INSTANCE = new JavaSolver();
+
+  private static final int MAX_ITERATIONS = 200;
+  private static final int MAX_EVALUATIONS = 2000;
+
+  private JavaSolver() {
+  }
+
+  @Override
+  public CameraSolution solve(
+      float[] objectPoints,
+      float[] imagePoints,
+      int count,
+      int width,
+      int height,
+      boolean solveDistortion,
+      double f,
+      double cx,
+      double cy) {
+    CameraSolution best = null;
+
+    // Start from the given intrinsics, with the pose the DLT finds for them
+    CameraSolution start = new CameraSolution();
+    start.fx = f;
+    start.fy = f;
+    start.cx = cx;
+    start.cy = cy;
+    if (poseFromDlt(objectPoints, imagePoints, count, start)) {
+      best = optimize(objectPoints, imagePoints, count, start, true, solveDistortion);
+    }
+
+    // Also start from the intrinsics the DLT finds, which is often closer when the guess
+    // is far off
+    start = cameraFromDlt(objectPoints, imagePoints, count, width, height);
+    if (start != null) {
+      CameraSolution solution = optimize(objectPoints, imagePoints, count, start, true, solveDistortion);
+      if (solution != null && (best == null || solution.rms < best.rms)) {
+        best = solution;
+      }
+    }
+
+    return best;
+  }
+
+  @Override
+  public Refinement createRefinement(float[] objectPoints, float[] imagePoints, int count) {
+    float[] objects = objectPoints.clone();
+    float[] images = imagePoints.clone();
+
+    return new Refinement() {
+      @Override
+      public void setImagePoint(int index, float x, float y) {
+        images[index * 2] = x;
+        images[index * 2 + 1] = y;
+      }
+
+      @Override
+      public CameraSolution refine(CameraSolution previous) {
+        return optimize(objects, images, count, previous, false, false);
+      }
+    };
+  }
+
+  // Minimizes the reprojection error starting from `start`. Always solves for the pose;
+  // the focal length and principal point are only solved for if `solveIntrinsics` is set,
+  // and k1, k2, p1 and p2 if `solveDistortion` is set. Returns null if the optimizer
+  // doesn't converge.
+  private static CameraSolution optimize(
+      float[] objectPoints,
+      float[] imagePoints,
+      int count,
+      CameraSolution start,
+      boolean solveIntrinsics,
+      boolean solveDistortion) {
+    Parameters parameters = new Parameters(start, solveIntrinsics, solveDistortion);
+
+    double[] target = new double[count * 2];
+    for (int i = 0; i < count * 2; i++) {
+      target[i] = imagePoints[i];
+    }
+
+    MultivariateJacobianFunction model = point -> {
+      double[] values = point.toArray();
+      double[] projected = new double[count * 2];
+      parameters.project(values, objectPoints, count, projected);
+
+      // Forward differences are plenty for the handful of parameters here
+      double[][] jacobian = new double[count * 2][values.length];
+      double[] shifted = new double[count * 2];
+      for (int j = 0; j < values.length; j++) {
+        double original = values[j];
+        double step = 1e-6 * Math.max(1, Math.abs(original));
+        values[j] = original + step;
+        parameters.project(values, objectPoints, count, shifted);
+        values[j] = original;
+        for (int i = 0; i < count * 2; i++) {
+          jacobian[i][j] = (shifted[i] - projected[i]) / step;
+        }
+      }
+
+      return new Pair<>(new ArrayRealVector(projected, false), new Array2DRowRealMatrix(jacobian, false));
+    };
+
+    LeastSquaresProblem problem = new LeastSquaresBuilder()
+        .start(parameters.initial)
+        .model(model)
+        .target(target)
+        .maxIterations(MAX_ITERATIONS)
+        .maxEvaluations(MAX_EVALUATIONS)
+        .build();
+
+    LeastSquaresOptimizer.Optimum optimum;
+    try {
+      optimum = new LevenbergMarquardtOptimizer().optimize(problem);
+    } catch (MathIllegalStateException e) {
+      return null;
+    }
+
+    CameraSolution solution = parameters.toSolution(optimum.getPoint().toArray());
+    solution.rms = optimum.getCost() / Math.sqrt(count);
+    if (!Double.isFinite(solution.rms) || solution.fx <= 0) {
+      return null;
+    }
+    return solution;
+  }
+
+  // Packs the values being optimized into a vector: focal length, principal point and
+  // distortion when they're being solved for, then rotation vector and translation.
+  // Values that aren't being solved for are taken from the starting solution.
+  private static class Parameters {
+    final CameraSolution start;
+    final boolean solveIntrinsics;
+    final boolean solveDistortion;
+    final double[] initial;
+
+    Parameters(CameraSolution start, boolean solveIntrinsics, boolean solveDistortion) {
+      this.start = start;
+      this.solveIntrinsics = solveIntrinsics;
+      this.solveDistortion = solveDistortion;
+
+      initial = new double[(solveIntrinsics ? 3 : 0) + (solveDistortion ? 4 : 0) + 6];
+      int i = 0;
+      if (solveIntrinsics) {
+        initial[i++] = start.fx;
+        initial[i++] = start.cx;
+        initial[i++] = start.cy;
+      }
+      if (solveDistortion) {
+        for (int j = 0; j < 4; j++) {
+          initial[i++] = start.distortion[j];
+        }
+      }
+      for (int j = 0; j < 3; j++) {
+        initial[i++] = start.rotationVector[j];
+      }
+      for (int j = 0; j < 3; j++) {
+        initial[i++] = start.translation[j];
+      }
+    }
+
+    CameraSolution toSolution(double[] values) {
+      CameraSolution solution = start.withoutPose();
+      int i = 0;
+      if (solveIntrinsics) {
+        // The aspect ratio stays fixed, like OpenCV's CALIB_FIX_ASPECT_RATIO
+        double aspect = start.fy / start.fx;
+        solution.fx = values[i++];
+        solution.fy = solution.fx * aspect;
+        solution.cx = values[i++];
+        solution.cy = values[i++];
+      }
+      if (solveDistortion) {
+        for (int j = 0; j < 4; j++) {
+          solution.distortion[j] = values[i++];
+        }
+      }
+      for (int j = 0; j < 3; j++) {
+        solution.rotationVector[j] = values[i++];
+      }
+      for (int j = 0; j < 3; j++) {
+        solution.translation[j] = values[i++];
+      }
+      rotationMatrix(solution.rotationVector, solution.rotation);
+      return solution;
+    }
+
+    void project(double[] values, float[] objectPoints, int count, double[] out) {
+      CameraSolution camera = toSolution(values);
+      double[] r = camera.rotation;
+      double[] t = camera.translation;
+      double k1 = camera.distortion[0], k2 = camera.distortion[1];
+      double p1 = camera.distortion[2], p2 = camera.distortion[3], k3 = camera.distortion[4];
+
+      for (int i = 0; i < count; i++) {
+        double x = objectPoints[i * 3];
+        double y = objectPoints[i * 3 + 1];
+        double z = objectPoints[i * 3 + 2];
+
+        double xc = r[0] * x + r[1] * y + r[2] * z + t[0];
+        double yc = r[3] * x + r[4] * y + r[5] * z + t[1];
+        double zc = r[6] * x + r[7] * y + r[8] * z + t[2];
+
+        double xn = xc / zc;
+        double yn = yc / zc;
+        double r2 = xn * xn + yn * yn;
+        double radial = 1 + r2 * (k1 + r2 * (k2 + r2 * k3));
+        double xd = xn * radial + 2 * p1 * xn * yn + p2 * (r2 + 2 * xn * xn);
+        double yd = yn * radial + p1 * (r2 + 2 * yn * yn) + 2 * p2 * xn * yn;
+
+        out[i * 2] = camera.fx * xd + camera.cx;
+        out[i * 2 + 1] = camera.fy * yd + camera.cy;
+      }
+    }
+  }
+
+  // Finds the pose of a camera with the intrinsics of `camera` with a DLT on normalized
+  // image coordinates, and writes it into `camera`. Returns false if the points are
+  // degenerate.
+  static boolean poseFromDlt(float[] objectPoints, float[] imagePoints, int count, CameraSolution camera) {
+    double[] normalized = new double[count * 2];
+    for (int i = 0; i < count; i++) {
+      normalized[i * 2] = (imagePoints[i * 2] - camera.cx) / camera.fx;
+      normalized[i * 2 + 1] = (imagePoints[i * 2 + 1] - camera.cy) / camera.fy;
+    }
+
+    double[][] p = dlt(objectPoints, normalized, count);
+    if (p == null) {
+      return false;
+    }
+
+    // The left 3x3 block is the rotation times an unknown scale. Snap it to the closest
+    // rotation and divide the scale out of the translation.
+    RealMatrix m = new Array2DRowRealMatrix(new double[][] {
+        {p[0][0], p[0][1], p[0][2]},
+        {p[1][0], p[1][1], p[1][2]},
+        {p[2][0], p[2][1], p[2][2]}});
+    SingularValueDecomposition svd = new SingularValueDecomposition(m);
+    RealMatrix rotation = svd.getU().multiply(svd.getVT());
+    double[] singularValues = svd.getSingularValues();
+    double scale = (singularValues[0] + singularValues[1] + singularValues[2]) / 3;
+    if (scale == 0 || new LUDecomposition(rotation).getDeterminant() < 0) {
+      return false;
+    }
+
+    setPose(camera, rotation.getData(), new double[] {p[0][3] / scale, p[1][3] / scale, p[2][3] / scale});
+    return true;
+  }
+
+  // Finds a full camera with a DLT on pixel coordinates, splitting the resulting
+  // projection matrix into intrinsics and rotation with an RQ decomposition. Returns null
+  // if the points are degenerate or the intrinsics come out implausible.
+  static CameraSolution cameraFromDlt(float[] objectPoints, float[] imagePoints, int count, int width, int height) {
+    // Condition the image coordinates by mapping the image to roughly [-1, 1]
+    double imageScale = 2.0 / Math.max(width, height);
+    double[] normalized = new double[count * 2];
+    for (int i = 0; i < count; i++) {
+      normalized[i * 2] = (imagePoints[i * 2] - width / 2.0) * imageScale;
+      normalized[i * 2 + 1] = (imagePoints[i * 2 + 1] - height / 2.0) * imageScale;
+    }
+
+    double[][] p = dlt(objectPoints, normalized, count);
+    if (p == null) {
+      return null;
+    }
+
+    // Undo the conditioning
+    for (int j = 0; j < 4; j++) {
+      p[0][j] = p[0][j] / imageScale + width / 2.0 * p[2][j];
+      p[1][j] = p[1][j] / imageScale + height / 2.0 * p[2][j];
+    }
+
+    // RQ decomposition of the left 3x3 block M = K R, done as a QR decomposition of the
+    // transposed, row reversed matrix
+    double[][] reversedTransposed = new double[3][3];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        reversedTransposed[j][i] = p[2 - i][j];
+      }
+    }
+    QRDecomposition qr = new QRDecomposition(new Array2DRowRealMatrix(reversedTransposed, false));
+    double[][] q1 = qr.getQ().getData();
+    double[][] r1 = qr.getR().getData();
+
+    double[][] k = new double[3][3];
+    double[][] rotation = new double[3][3];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        k[i][j] = r1[2 - j][2 - i];
+        rotation[i][j] = q1[j][2 - i];
+      }
+    }
+
+    // Make the diagonal of K positive
+    for (int i = 0; i < 3; i++) {
+      if (k[i][i] < 0) {
+        for (int j = 0; j < 3; j++) {
+          k[j][i] = -k[j][i];
+          rotation[i][j] = -rotation[i][j];
+        }
+      }
+    }
+    if (new LUDecomposition(new Array2DRowRealMatrix(rotation, false)).getDeterminant() < 0) {
+      return null;
+    }
+
+    double lambda = k[2][2];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        k[i][j] /= lambda;
+      }
+    }
+
+    double fx = k[0][0];
+    double fy = k[1][1];
+    if (!(fx > 0 && fy > 0) || Math.abs(fx / fy - 1) > 0.5) {
+      return null;
+    }
+
+    // t = K^-1 p4 / lambda, by back substitution through the upper triangular K
+    double tz = p[2][3] / lambda;
+    double ty = (p[1][3] / lambda - k[1][2] * tz) / k[1][1];
+    double tx = (p[0][3] / lambda - k[0][1] * ty - k[0][2] * tz) / k[0][0];
+
+    CameraSolution camera = new CameraSolution();
+    camera.fx = (fx + fy) / 2;
+    camera.fy = camera.fx;
+    camera.cx = k[0][2];
+    camera.cy = k[1][2];
+    setPose(camera, rotation, new double[] {tx, ty, tz});
+    return camera;
+  }
+
+  // Solves for the 3x4 matrix P with (u, v, 1) ~ P (x, y, z, 1) for the `count` packed
+  // object and image points, as the least squares null vector of the DLT system. The
+  // object points are centered and scaled first for conditioning. P's sign is chosen so
+  // that its left 3x3 block has a positive determinant, i.e. points are in front.
+  // Returns null if the points are degenerate.
+  private static double[][] dlt(float[] objectPoints, double[] imagePoints, int count) {
+    if (count < Calibration.MIN_POINTS) {
+      return null;
+    }
+
+    double centerX = 0, centerY = 0, centerZ = 0;
+    for (int i = 0; i < count; i++) {
+      centerX += objectPoints[i * 3];
+      centerY += objectPoints[i * 3 + 1];
+      centerZ += objectPoints[i * 3 + 2];
+    }
+    centerX /= count;
+    centerY /= count;
+    centerZ /= count;
+
+    double meanDistance = 0;
+    for (int i = 0; i < count; i++) {
+      double dx = objectPoints[i * 3] - centerX;
+      double dy = objectPoints[i * 3 + 1] - centerY;
+      double dz = objectPoints[i * 3 + 2] - centerZ;
+      meanDistance += Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+    meanDistance /= count;
+    if (meanDistance == 0) {
+      return null;
+    }
+    double s = Math.sqrt(3) / meanDistance;
+
+    double[][] a = new double[count * 2][12];
+    for (int i = 0; i < count; i++) {
+      double x = (objectPoints[i * 3] - centerX) * s;
+      double y = (objectPoints[i * 3 + 1] - centerY) * s;
+      double z = (objectPoints[i * 3 + 2] - centerZ) * s;
+      double u = imagePoints[i * 2];
+      double v = imagePoints[i * 2 + 1];
+
+      double[] row = a[i * 2];
+      row[0] = x; row[1] = y; row[2] = z; row[3] = 1;
+      row[8] = -u * x; row[9] = -u * y; row[10] = -u * z; row[11] = -u;
+
+      row = a[i * 2 + 1];
+      row[4] = x; row[5] = y; row[6] = z; row[7] = 1;
+      row[8] = -v * x; row[9] = -v * y; row[10] = -v * z; row[11] = -v;
+    }
+
+    SingularValueDecomposition svd = new SingularValueDecomposition(new Array2DRowRealMatrix(a, false));
+    if (svd.getRank() < 11) {
+      return null;
+    }
+    double[] solution = svd.getV().getColumn(11);
+
+    // Undo the conditioning: P = P' T, with T the centering and scaling above
+    double[][] p = new double[3][4];
+    for (int i = 0; i < 3; i++) {
+      double a0 = solution[i * 4], a1 = solution[i * 4 + 1], a2 = solution[i * 4 + 2];
+      p[i][0] = a0 * s;
+      p[i][1] = a1 * s;
+      p[i][2] = a2 * s;
+      p[i][3] = solution[i * 4 + 3] - s * (a0 * centerX + a1 * centerY + a2 * centerZ);
+    }
+
+    double determinant = new LUDecomposition(new Array2DRowRealMatrix(new double[][] {
+        {p[0][0], p[0][1], p[0][2]},
+        {p[1][0], p[1][1], p[1][2]},
+        {p[2][0], p[2][1], p[2][2]}}, false)).getDeterminant();
+    if (determinant == 0 || !Double.isFinite(determinant)) {
+      return null;
+    }
+    if (determinant < 0) {
+      for (double[] row : p) {
+        for (int j = 0; j < 4; j++) {
+          row[j] = -row[j];
+        }
+      }
+    }
+    return p;
+  }
+
+  private static void setPose(CameraSolution camera, double[][] rotation, double[] translation) {
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        camera.rotation[i * 3 + j] = rotation[i][j];
+      }
+    }
+    rotationVector(camera.rotation, camera.rotationVector);
+    System.arraycopy(translation, 0, camera.translation, 0, 3);
+  }
+
+  // Converts a rotation vector (axis times angle) to a row-major rotation matrix
+  static void rotationMatrix(double[] vector, double[] out) {
+    double theta = Math.sqrt(vector[0] * vector[0] + vector[1] * vector[1] + vector[2] * vector[2]);
+    if (theta < 1e-12) {
+      out[0] = 1; out[1] = -vector[2]; out[2] = vector[1];
+      out[3] = vector[2]; out[4] = 1; out[5] = -vector[0];
+      out[6] = -vector[1]; out[7] = vector[0]; out[8] = 1;
+      return;
+    }
+
+    double x = vector[0] / theta;
+    double y = vector[1] / theta;
+    double z = vector[2] / theta;
+    double c = Math.cos(theta);
+    double s = Math.sin(theta);
+    double c1 = 1 - c;
+
+    out[0] = c + c1 * x * x;
+    out[1] = c1 * x * y - s * z;
+    out[2] = c1 * x * z + s * y;
+    out[3] = c1 * y * x + s * z;
+    out[4] = c + c1 * y * y;
+    out[5] = c1 * y * z - s * x;
+    out[6] = c1 * z * x - s * y;
+    out[7] = c1 * z * y + s * x;
+    out[8] = c + c1 * z * z;
+  }
+
+  // Converts a row-major rotation matrix to a rotation vector (axis times angle)
+  static void rotationVector(double[] m, double[] out) {
+    double cos = Math.max(-1, Math.min(1, (m[0] + m[4] + m[8] - 1) / 2));
+    double theta = Math.acos(cos);
+
+    if (theta < 1e-9) {
+      out[0] = (m[7] - m[5]) / 2;
+      out[1] = (m[2] - m[6]) / 2;
+      out[2] = (m[3] - m[1]) / 2;
+      return;
+    }
+
+    if (Math.PI - theta < 1e-6) {
+      // Near a half turn the antisymmetric part vanishes; read the axis off the diagonal
+      // of (R + I) / 2 = axis axis^T instead
+      double x = Math.sqrt(Math.max(0, (m[0] + 1) / 2));
+      double y = Math.sqrt(Math.max(0, (m[4] + 1) / 2));
+      double z = Math.sqrt(Math.max(0, (m[8] + 1) / 2));
+      if (x >= y && x >= z) {
+        y = Math.copySign(y, m[1] + m[3]);
+        z = Math.copySign(z, m[2] + m[6]);
+      } else if (y >= z) {
+        x = Math.copySign(x, m[1] + m[3]);
+        z = Math.copySign(z, m[5] + m[7]);
+      } else {
+        x = Math.copySign(x, m[2] + m[6]);
+        y = Math.copySign(y, m[5] + m[7]);
+      }
+      out[0] = x * theta;
+      out[1] = y * theta;
+      out[2] = z * theta;
+      return;
+    }
+
+    double factor = theta / (2 * Math.sin(theta));
+    out[0] = (m[7] - m[5]) * factor;
+    out[1] = (m[2] - m[6]) * factor;
+    out[2] = (m[3] - m[1]) * factor;
+  }
+}
@@ -0,0 +1,125 @@
+package spacefiller.modelmapper;
+
+import processing.core.PApplet;
+import processing.core.PShape;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static processing.core.PConstants.TRIANGLES;
+
+// Simplified versions of the model, for drawing its wireframe in the calibration views.
+// At full resolution, a dense scanned mesh draws slowly and its edges run together into
+// a solid white blob, so the views draw the most detailed level whose triangles still
+// come out big enough on screen to tell apart.
+//
+// The levels are built from the welded mesh in the background, each from the one before
+// it, and can be drawn as soon as they're done; until then, the most detailed one that's
+// done is drawn instead. Picking keeps using the full resolution mesh.
+//
+// Models with parts the mesh leaves out, like primitives, points or lines, are always
+// drawn from a copy of the model's shape instead, since simplifying the mesh would only
+// drop more of them.
+class LevelsOfDetail {
+  // Each level has this many times fewer triangles than the one before
+  private static final int REDUCTION = 4;
+
+  // No level has fewer triangles than this
+  private static final int MIN_TRIANGLES = 1000;
+
+  // Smallest area on screen, in square pixels, that a triangle of the wireframe can take
+  // up and still have its edges told apart
+  private static final float MIN_TRIANGLE_AREA = 50;
+
+  // Level 0 is the full resolution mesh, or the model's shape
+  private final int levelCount;
+  private final AtomicReferenceArray<Mesh> meshes;
+  private final PShape[] shapes;
+
+  private final float surfaceArea;
+
+  // Draws `shape` at every distance instead of the mesh if it isn't null
+  LevelsOfDetail(Mesh mesh, PShape shape) {
+    int count = 1;
+    if (shape == null) {
+      for (int triangles = mesh.triangleCount / REDUCTION; triangles >= MIN_TRIANGLES; triangles /= REDUCTION) {
+        count++;
+      }
+    }
+    levelCount = count;
+    meshes = new AtomicReferenceArray<>(levelCount);
+    shapes = new PShape[levelCount];
+    meshes.set(0, mesh);
+    shapes[0] = shape;
+    surfaceArea = getSurfaceArea(mesh);
+
+    if (levelCount > 1) {
+      ForkJoinPool.commonPool().execute(this::build);
+    }
+  }
+
+  private void build() {
+    try {
+      Mesh level = meshes.get(0);
+      for (int i = 1; i < levelCount; i++) {
+        level = MeshSimplifier.simplify(level, level.triangleCount / REDUCTION);
+        meshes.set(i, level);
+      }
+    } catch (Exception e) {
+      System.out.println("ModelMapper: Couldn't simplify the model; the calibration views will draw it at full resolution");
+      e.printStackTrace();
+    }
+  }
+
+  int getLevelCount() {
+    return levelCount;
+  }
+
+  // Picks the level to draw when one unit of model space at the model's distance covers
+  // `pixelsPerUnit` pixels on screen, and returns its shape. Shapes are created the
+  // first time their level is picked, so this has to be called from the sketch's thread.
+  PShape getShape(PApplet parent, float pixelsPerUnit) {
+    // Around half of a closed surface faces the camera
+    float visibleArea = surfaceArea / 2 * pixelsPerUnit * pixelsPerUnit;
+
+    int level = 0;
+    while (level + 1 < levelCount
+        && visibleArea / meshes.get(level).triangleCount < MIN_TRIANGLE_AREA
+        && meshes.get(level + 1) != null) {
+      level++;
+    }
+
+    if (shapes[level] == null) {
+      shapes[level] = createShape(parent, meshes.get(level));
+    }
+    return shapes[level];
+  }
+
+  private static PShape createShape(PApplet parent, Mesh mesh) {
+    PShape shape = parent.createShape();
+    shape.beginShape(TRIANGLES);
+    for (int i = 0; i < mesh.triangleCount * 3; i++) {
+      int v = mesh.indices[i] * 3;
+      shape.vertex(mesh.positions[v], mesh.positions[v + 1], mesh.positions[v + 2]);
+    }
+    shape.endShape();
+    return shape;
+  }
+
+  private static float getSurfaceArea(Mesh mesh) {
+    float[] p = mesh.positions;
+    double area = 0;
+    for (int t = 0; t < mesh.triangleCount; t++) {
+      int a = mesh.indices[t * 3] * 3;
+      int b = mesh.indices[t * 3 + 1] * 3;
+      int c = mesh.indices[t * 3 + 2] * 3;
+      float ux = p[b] - p[a], uy = p[b + 1] - p[a + 1], uz = p[b + 2] - p[a + 2];
+      float vx = p[c] - p[a], vy = p[c + 1] - p[a + 1], vz = p[c + 2] - p[a + 2];
+      float nx = uy * vz - uz * vy;
+      float ny = uz * vx - ux * vz;
+      float nz = ux * vy - uy * vx;
+      area += Math.sqrt(nx * nx + ny * ny + nz * nz) / 2;
+    }
+    return (float) area;
+  }
+}
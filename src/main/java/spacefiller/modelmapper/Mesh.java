@@ -0,0 +1,245 @@
+package spacefiller.modelmapper;
+
+import processing.core.PMatrix3D;
+import processing.core.PShape;
+import processing.core.PVector;
+
+import java.util.Arrays;
+
+// The triangles of a model as a single indexed mesh, in flat primitive arrays. This is
+// what the library works with for picking, bounds and software rendering, rather than
+// walking the `PShape` tree.
+//
+// `PShape` stores every vertex of every triangle separately, so a scanned mesh where
+// each vertex is shared by around six triangles takes several times the memory it needs.
+// Building a `Mesh` welds vertices whose position, texture coordinates, normal and color
+// are all identical back into one, and refers to them by index.
+class Mesh {
+  // Per vertex: (x, y, z) position, (u, v) texture coordinates, (x, y, z) normal and ARGB
+  // fill color
+  int vertexCount;
+  float[] positions;
+  float[] uvs;
+  float[] normals;
+  int[] colors;
+
+  // Whether some of the shape didn't make it into the triangles: primitives, or points
+  // and lines
+  boolean missingGeometry;
+
+  // Whether any vertex had a normal set. Processing gives vertices without one a normal
+  // of (0, 0, 1), which on anything but a flat model facing +z is wrong.
+  boolean hasNormals;
+
+  // Three vertex indices per triangle
+  int triangleCount;
+  int[] indices;
+
+  // Welds the vertices and triangles of every visible GEOMETRY shape in `shape` and its
+  // descendants, with their transforms applied, so the mesh lines up with the shape as
+  // it's drawn. The vertices of points and lines are kept, for picking, but they make no
+  // triangles. Primitives like box() are left out, since Processing only generates their
+  // vertices when it tessellates them for OpenGL.
+  static Mesh fromShape(PShape shape) {
+    return fromShape(shape, null);
+  }
+
+  // Like `fromShape(shape)`, reporting on the vertices read so far to `progress`
+  static Mesh fromShape(PShape shape, Shapes.Progress progress) {
+    Builder builder = new Builder(countVertices(shape), progress);
+    builder.add(shape, null);
+    return builder.build();
+  }
+
+  void getVertex(int index, PVector out) {
+    out.set(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2]);
+  }
+
+  // Grows the box from `min` to `max` to contain every vertex, like `Shapes.getBounds`
+  void getBounds(PVector min, PVector max) {
+    for (int i = 0; i < vertexCount; i++) {
+      float x = positions[i * 3];
+      float y = positions[i * 3 + 1];
+      float z = positions[i * 3 + 2];
+      min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+      max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+    }
+  }
+
+  private static int countVertices(PShape shape) {
+    if (!shape.isVisible()) {
+      return 0;
+    }
+    int count = shape.getFamily() == PShape.GEOMETRY ? shape.getVertexCount() : 0;
+    for (int i = 0; i < shape.getChildCount(); i++) {
+      count += countVertices(shape.getChild(i));
+    }
+    return count;
+  }
+
+  private static class Builder {
+    private final Mesh mesh = new Mesh();
+
+    // Open addressing hash table from vertex attributes to vertex index, -1 when empty
+    private final int[] table;
+
+    // Indices of the current shape's vertices in the mesh
+    private int[] shapeVertices = new int[0];
+
+    private int indexCount;
+
+    private final Shapes.Progress progress;
+    private final int totalVertices;
+    private int readVertices;
+
+    Builder(int maxVertices, Shapes.Progress progress) {
+      this.progress = progress;
+      this.totalVertices = maxVertices;
+      mesh.positions = new float[maxVertices * 3];
+      mesh.uvs = new float[maxVertices * 2];
+      mesh.normals = new float[maxVertices * 3];
+      mesh.colors = new int[maxVertices];
+      mesh.indices = new int[0];
+
+      int capacity = Integer.highestOneBit(Math.max(1, maxVertices) * 2 - 1) << 1;
+      table = new int[capacity];
+      Arrays.fill(table, -1);
+    }
+
+    void add(PShape shape, PMatrix3D parentTransform) {
+      if (!shape.isVisible()) {
+        return;
+      }
+      PMatrix3D transform = Shapes.getTransform(shape, parentTransform);
+      if (shape.getFamily() == PShape.GEOMETRY) {
+        addGeometry(shape, transform);
+      } else if (shape.getFamily() == PShape.PRIMITIVE) {
+        System.out.println("ModelMapper: Skipping a primitive shape, which can't be used without OpenGL");
+        mesh.missingGeometry = true;
+      }
+      for (int i = 0; i < shape.getChildCount(); i++) {
+        add(shape.getChild(i), transform);
+      }
+    }
+
+    private void addGeometry(PShape shape, PMatrix3D transform) {
+      int[] triangles = Shapes.getTriangles(shape);
+      int count = shape.getVertexCount();
+      if (triangles.length == 0 && count > 0) {
+        mesh.missingGeometry = true;
+      }
+      if (shapeVertices.length < count) {
+        shapeVertices = new int[count];
+      }
+
+      // Normals go through the inverse transpose, which keeps them perpendicular to the
+      // surface under non-uniform scales
+      PMatrix3D normalTransform = null;
+      if (transform != null) {
+        normalTransform = transform.get();
+        if (!normalTransform.invert()) {
+          normalTransform = transform.get();
+        }
+        normalTransform.transpose();
+      }
+
+      for (int i = 0; i < count; i++) {
+        float x = shape.getVertexX(i);
+        float y = shape.getVertexY(i);
+        float z = shape.getVertexZ(i);
+        float nx = shape.getNormalX(i);
+        float ny = shape.getNormalY(i);
+        float nz = shape.getNormalZ(i);
+        mesh.hasNormals |= nx != 0 || ny != 0 || (nz != 0 && nz != 1);
+
+        if (transform != null) {
+          float tx = transform.multX(x, y, z);
+          float ty = transform.multY(x, y, z);
+          z = transform.multZ(x, y, z);
+          x = tx;
+          y = ty;
+
+          float tnx = normalTransform.multX(nx, ny, nz, 0);
+          float tny = normalTransform.multY(nx, ny, nz, 0);
+          float tnz = normalTransform.multZ(nx, ny, nz, 0);
+          float length = (float) Math.sqrt(tnx * tnx + tny * tny + tnz * tnz);
+          if (length > 0) {
+            nx = tnx / length;
+            ny = tny / length;
+            nz = tnz / length;
+          }
+        }
+
+        shapeVertices[i] = weld(x, y, z,
+            shape.getTextureU(i), shape.getTextureV(i),
+            nx, ny, nz,
+            shape.getFill(i));
+      }
+
+      if (indexCount + triangles.length > mesh.indices.length) {
+        mesh.indices = Arrays.copyOf(mesh.indices, Math.max(indexCount + triangles.length, mesh.indices.length * 2));
+      }
+      for (int index : triangles) {
+        mesh.indices[indexCount++] = shapeVertices[index];
+      }
+
+      readVertices += count;
+      if (progress != null) {
+        progress.update(readVertices, totalVertices);
+      }
+    }
+
+    // Returns the index of the vertex with these attributes, adding it if it's new
+    private int weld(float x, float y, float z, float u, float v, float nx, float ny, float nz, int color) {
+      int hash = Float.floatToIntBits(x);
+      hash = hash * 31 + Float.floatToIntBits(y);
+      hash = hash * 31 + Float.floatToIntBits(z);
+      hash = hash * 31 + Float.floatToIntBits(u);
+      hash = hash * 31 + Float.floatToIntBits(v);
+      hash = hash * 31 + Float.floatToIntBits(nx);
+      hash = hash * 31 + Float.floatToIntBits(ny);
+      hash = hash * 31 + Float.floatToIntBits(nz);
+      hash = hash * 31 + color;
+      hash ^= hash >>> 16;
+
+      float[] p = mesh.positions;
+      float[] t = mesh.uvs;
+      float[] n = mesh.normals;
+      int mask = table.length - 1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        int i = table[slot];
+        if (i < 0) {
+          i = mesh.vertexCount++;
+          p[i * 3] = x;
+          p[i * 3 + 1] = y;
+          p[i * 3 + 2] = z;
+          t[i * 2] = u;
+          t[i * 2 + 1] = v;
+          n[i * 3] = nx;
+          n[i * 3 + 1] = ny;
+          n[i * 3 + 2] = nz;
+          mesh.colors[i] = color;
+          table[slot] = i;
+          return i;
+        }
+        if (p[i * 3] == x && p[i * 3 + 1] == y && p[i * 3 + 2] == z
+            && t[i * 2] == u && t[i * 2 + 1] == v
+            && n[i * 3] == nx && n[i * 3 + 1] == ny && n[i * 3 + 2] == nz
+            && mesh.colors[i] == color) {
+          return i;
+        }
+      }
+    }
+
+    Mesh build() {
+      int count = mesh.vertexCount;
+      mesh.positions = Arrays.copyOf(mesh.positions, count * 3);
+      mesh.uvs = Arrays.copyOf(mesh.uvs, count * 2);
+      mesh.normals = Arrays.copyOf(mesh.normals, count * 3);
+      mesh.colors = Arrays.copyOf(mesh.colors, count);
+      mesh.indices = Arrays.copyOf(mesh.indices, indexCount);
+      mesh.triangleCount = indexCount / 3;
+      return mesh;
+    }
+  }
+}
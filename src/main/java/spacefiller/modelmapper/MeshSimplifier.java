@@ -0,0 +1,531 @@
+package spacefiller.modelmapper;
+
+import java.util.Arrays;
+
+// Reduces the number of triangles in a mesh by repeatedly collapsing the edge whose
+// removal changes its shape the least, as measured by quadric error metrics (Garland and
+// Heckbert, "Surface Simplification Using Quadric Error Metrics").
+//
+// Only positions are simplified. Vertices are welded by position alone first, so seams
+// in texture coordinates or normals don't hold the mesh apart, and the result has no
+// texture coordinates, normals or colors to speak of. That's all a wireframe needs.
+class MeshSimplifier {
+  // Weight of the planes through open borders, relative to the surface, which keeps
+  // borders from being eaten away
+  private static final double BOUNDARY_WEIGHT = 1000;
+
+  // Collapses that would turn a triangle's normal by more than about 80 degrees are
+  // rejected, since they tend to fold the surface over onto itself
+  private static final double MIN_NORMAL_COSINE = 0.2;
+
+  private final int vertexCount;
+  private final double[] positions;
+  // Per vertex, the upper triangle of its symmetric 4x4 quadric
+  private final double[] quadrics;
+  // Bumped whenever a vertex moves, to tell stale collapses in the heap apart
+  private final int[] versions;
+  private final boolean[] removed;
+
+  private final int[] triangles;
+  private final boolean[] deleted;
+  private int triangleCount;
+
+  // Triangles around each vertex. Deleted triangles are only cleaned out of the lists of
+  // vertices that move.
+  private final int[][] vertexTriangles;
+  private final int[] vertexTriangleCounts;
+
+  // Scratch for the link condition: a vertex is marked when its entry equals `stamp`
+  private final int[] marks;
+  private int stamp;
+
+  private final EdgeHeap heap = new EdgeHeap();
+
+  // Scratch for evaluating collapses
+  private final double[] target = new double[3];
+  private final double[] combined = new double[10];
+  private final double[] before = new double[3];
+  private final double[] after = new double[3];
+
+  // Returns a copy of `mesh` with at most `targetTriangles` triangles, or as close as it
+  // can get without folding the surface over
+  static Mesh simplify(Mesh mesh, int targetTriangles) {
+    MeshSimplifier simplifier = new MeshSimplifier(mesh);
+    simplifier.run(targetTriangles);
+    return simplifier.toMesh();
+  }
+
+  private MeshSimplifier(Mesh mesh) {
+    // Weld by position
+    int[] remap = new int[mesh.vertexCount];
+    int[] table = new int[Integer.highestOneBit(Math.max(1, mesh.vertexCount) * 2 - 1) << 1];
+    Arrays.fill(table, -1);
+    double[] welded = new double[mesh.vertexCount * 3];
+    int count = 0;
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      float x = mesh.positions[i * 3];
+      float y = mesh.positions[i * 3 + 1];
+      float z = mesh.positions[i * 3 + 2];
+      int hash = Float.floatToIntBits(x);
+      hash = hash * 31 + Float.floatToIntBits(y);
+      hash = hash * 31 + Float.floatToIntBits(z);
+      hash ^= hash >>> 16;
+
+      int mask = table.length - 1;
+      for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+        int j = table[slot];
+        if (j < 0) {
+          welded[count * 3] = x;
+          welded[count * 3 + 1] = y;
+          welded[count * 3 + 2] = z;
+          table[slot] = count;
+          remap[i] = count++;
+          break;
+        }
+        if (welded[j * 3] == x && welded[j * 3 + 1] == y && welded[j * 3 + 2] == z) {
+          remap[i] = j;
+          break;
+        }
+      }
+    }
+
+    vertexCount = count;
+    positions = Arrays.copyOf(welded, count * 3);
+    quadrics = new double[count * 10];
+    versions = new int[count];
+    removed = new boolean[count];
+    marks = new int[count];
+
+    // Triangles that welding made degenerate are dropped right away
+    triangles = new int[mesh.triangleCount * 3];
+    for (int t = 0; t < mesh.triangleCount; t++) {
+      int a = remap[mesh.indices[t * 3]];
+      int b = remap[mesh.indices[t * 3 + 1]];
+      int c = remap[mesh.indices[t * 3 + 2]];
+      if (a != b && b != c && c != a) {
+        triangles[triangleCount * 3] = a;
+        triangles[triangleCount * 3 + 1] = b;
+        triangles[triangleCount * 3 + 2] = c;
+        triangleCount++;
+      }
+    }
+    deleted = new boolean[triangleCount];
+
+    vertexTriangleCounts = new int[count];
+    for (int i = 0; i < triangleCount * 3; i++) {
+      vertexTriangleCounts[triangles[i]]++;
+    }
+    vertexTriangles = new int[count][];
+    for (int v = 0; v < count; v++) {
+      vertexTriangles[v] = new int[vertexTriangleCounts[v]];
+      vertexTriangleCounts[v] = 0;
+    }
+    for (int t = 0; t < triangleCount; t++) {
+      for (int k = 0; k < 3; k++) {
+        int v = triangles[t * 3 + k];
+        vertexTriangles[v][vertexTriangleCounts[v]++] = t;
+      }
+    }
+
+    addQuadrics();
+  }
+
+  // Every vertex starts with the sum of the planes of the triangles around it, weighted
+  // by area, plus a plane perpendicular to the surface along each open border it's on
+  private void addQuadrics() {
+    double[] normal = new double[3];
+    for (int t = 0; t < triangleCount; t++) {
+      double area = getNormal(triangles[t * 3], triangles[t * 3 + 1], triangles[t * 3 + 2], -1, null, normal) / 2;
+      if (area == 0) {
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        addPlane(triangles[t * 3 + k], normal, triangles[t * 3], area);
+      }
+
+      for (int k = 0; k < 3; k++) {
+        int u = triangles[t * 3 + k];
+        int v = triangles[t * 3 + (k + 1) % 3];
+        if (countSharedTriangles(u, v) != 1) {
+          continue;
+        }
+        double ex = positions[v * 3] - positions[u * 3];
+        double ey = positions[v * 3 + 1] - positions[u * 3 + 1];
+        double ez = positions[v * 3 + 2] - positions[u * 3 + 2];
+        double[] border = {
+            ey * normal[2] - ez * normal[1],
+            ez * normal[0] - ex * normal[2],
+            ex * normal[1] - ey * normal[0]
+        };
+        double length = Math.sqrt(border[0] * border[0] + border[1] * border[1] + border[2] * border[2]);
+        if (length == 0) {
+          continue;
+        }
+        border[0] /= length;
+        border[1] /= length;
+        border[2] /= length;
+        double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+        addPlane(u, border, u, weight);
+        addPlane(v, border, u, weight);
+      }
+    }
+  }
+
+  // Adds the plane with unit `normal` through vertex `through` to the quadric of `vertex`
+  private void addPlane(int vertex, double[] normal, int through, double weight) {
+    double a = normal[0], b = normal[1], c = normal[2];
+    double d = -(a * positions[through * 3] + b * positions[through * 3 + 1] + c * positions[through * 3 + 2]);
+    int q = vertex * 10;
+    quadrics[q] += weight * a * a;
+    quadrics[q + 1] += weight * a * b;
+    quadrics[q + 2] += weight * a * c;
+    quadrics[q + 3] += weight * a * d;
+    quadrics[q + 4] += weight * b * b;
+    quadrics[q + 5] += weight * b * c;
+    quadrics[q + 6] += weight * b * d;
+    quadrics[q + 7] += weight * c * c;
+    quadrics[q + 8] += weight * c * d;
+    quadrics[q + 9] += weight * d * d;
+  }
+
+  private void run(int targetTriangles) {
+    for (int t = 0; t < triangleCount; t++) {
+      for (int k = 0; k < 3; k++) {
+        push(triangles[t * 3 + k], triangles[t * 3 + (k + 1) % 3]);
+      }
+    }
+
+    int[] edge = new int[4];
+    int liveTriangles = triangleCount;
+    while (liveTriangles > targetTriangles && !heap.isEmpty()) {
+      heap.pop(edge);
+      int a = edge[0];
+      int b = edge[1];
+      if (removed[a] || removed[b] || versions[a] != edge[2] || versions[b] != edge[3]) {
+        continue;
+      }
+      liveTriangles -= collapse(a, b);
+    }
+  }
+
+  private void push(int a, int b) {
+    heap.push(evaluate(a, b, target), a, b, versions[a], versions[b]);
+  }
+
+  // Finds the best position for the vertex replacing `a` and `b`, writes it to `out` and
+  // returns its error. That's the point minimizing the combined quadric if there's a
+  // well defined one near the edge, or else the best of the edge's ends and middle.
+  private double evaluate(int a, int b, double[] out) {
+    double[] q = combined;
+    for (int i = 0; i < 10; i++) {
+      q[i] = quadrics[a * 10 + i] + quadrics[b * 10 + i];
+    }
+
+    double ax = positions[a * 3], ay = positions[a * 3 + 1], az = positions[a * 3 + 2];
+    double bx = positions[b * 3], by = positions[b * 3 + 1], bz = positions[b * 3 + 2];
+    double mx = (ax + bx) / 2, my = (ay + by) / 2, mz = (az + bz) / 2;
+    double edgeLength2 = (bx - ax) * (bx - ax) + (by - ay) * (by - ay) + (bz - az) * (bz - az);
+
+    double best = Double.POSITIVE_INFINITY;
+
+    // Solve for the zero gradient with Cramer's rule
+    double det = q[0] * (q[4] * q[7] - q[5] * q[5])
+        - q[1] * (q[1] * q[7] - q[5] * q[2])
+        + q[2] * (q[1] * q[5] - q[4] * q[2]);
+    if (det != 0) {
+      double x = -(q[3] * (q[4] * q[7] - q[5] * q[5])
+          - q[1] * (q[6] * q[7] - q[5] * q[8])
+          + q[2] * (q[6] * q[5] - q[4] * q[8])) / det;
+      double y = -(q[0] * (q[6] * q[7] - q[8] * q[5])
+          - q[3] * (q[1] * q[7] - q[5] * q[2])
+          + q[2] * (q[1] * q[8] - q[6] * q[2])) / det;
+      double z = -(q[0] * (q[4] * q[8] - q[5] * q[6])
+          - q[1] * (q[1] * q[8] - q[6] * q[2])
+          + q[3] * (q[1] * q[5] - q[4] * q[2])) / det;
+      // A nearly singular quadric, like on a flat patch, can put the optimum anywhere
+      // along the flat direction
+      double distance2 = (x - mx) * (x - mx) + (y - my) * (y - my) + (z - mz) * (z - mz);
+      if (distance2 <= edgeLength2) {
+        best = consider(q, x, y, z, best, out);
+      }
+    }
+    best = consider(q, ax, ay, az, best, out);
+    best = consider(q, bx, by, bz, best, out);
+    best = consider(q, mx, my, mz, best, out);
+    return best;
+  }
+
+  private static double consider(double[] q, double x, double y, double z, double best, double[] out) {
+    double error = q[0] * x * x + 2 * q[1] * x * y + 2 * q[2] * x * z + 2 * q[3] * x
+        + q[4] * y * y + 2 * q[5] * y * z + 2 * q[6] * y
+        + q[7] * z * z + 2 * q[8] * z
+        + q[9];
+    if (error < best) {
+      out[0] = x;
+      out[1] = y;
+      out[2] = z;
+      return error;
+    }
+    return best;
+  }
+
+  // Merges `b` into `a` unless that would fold the surface or make it non-manifold.
+  // Returns the number of triangles removed.
+  private int collapse(int a, int b) {
+    evaluate(a, b, target);
+    if (!isLinkValid(a, b) || flips(a, b, target) || flips(b, a, target)) {
+      return 0;
+    }
+
+    positions[a * 3] = target[0];
+    positions[a * 3 + 1] = target[1];
+    positions[a * 3 + 2] = target[2];
+    for (int i = 0; i < 10; i++) {
+      quadrics[a * 10 + i] += quadrics[b * 10 + i];
+    }
+    versions[a]++;
+    removed[b] = true;
+
+    int removedTriangles = 0;
+    for (int i = 0; i < vertexTriangleCounts[b]; i++) {
+      int t = vertexTriangles[b][i];
+      if (deleted[t]) {
+        continue;
+      }
+      if (contains(t, a)) {
+        deleted[t] = true;
+        removedTriangles++;
+      } else {
+        for (int k = 0; k < 3; k++) {
+          if (triangles[t * 3 + k] == b) {
+            triangles[t * 3 + k] = a;
+          }
+        }
+        addVertexTriangle(a, t);
+      }
+    }
+    vertexTriangles[b] = null;
+    vertexTriangleCounts[b] = 0;
+
+    // Drop the deleted triangles from `a`, then queue up its edges with their new costs
+    int count = 0;
+    int[] list = vertexTriangles[a];
+    for (int i = 0; i < vertexTriangleCounts[a]; i++) {
+      if (!deleted[list[i]]) {
+        list[count++] = list[i];
+      }
+    }
+    vertexTriangleCounts[a] = count;
+    for (int i = 0; i < count; i++) {
+      int t = list[i];
+      for (int k = 0; k < 3; k++) {
+        int v = triangles[t * 3 + k];
+        if (v != a) {
+          push(a, v);
+        }
+      }
+    }
+    return removedTriangles;
+  }
+
+  // Collapsing an edge only keeps the surface manifold if the vertices around both ends
+  // are exactly those of the triangles on the edge
+  private boolean isLinkValid(int a, int b) {
+    stamp++;
+    for (int i = 0; i < vertexTriangleCounts[a]; i++) {
+      int t = vertexTriangles[a][i];
+      if (!deleted[t]) {
+        for (int k = 0; k < 3; k++) {
+          marks[triangles[t * 3 + k]] = stamp;
+        }
+      }
+    }
+
+    int shared = 0;
+    int markedStamp = stamp;
+    stamp++;
+    for (int i = 0; i < vertexTriangleCounts[b]; i++) {
+      int t = vertexTriangles[b][i];
+      if (deleted[t]) {
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        int v = triangles[t * 3 + k];
+        if (v != a && v != b && marks[v] == markedStamp) {
+          marks[v] = stamp;
+          shared++;
+        }
+      }
+    }
+    return shared == countSharedTriangles(a, b);
+  }
+
+  // Whether moving `v` to `p` turns any of its triangles not on the edge to `other` too far
+  private boolean flips(int v, int other, double[] p) {
+    for (int i = 0; i < vertexTriangleCounts[v]; i++) {
+      int t = vertexTriangles[v][i];
+      if (deleted[t] || contains(t, other)) {
+        continue;
+      }
+      int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+      if (getNormal(a, b, c, -1, null, before) == 0) {
+        continue;
+      }
+      if (getNormal(a, b, c, v, p, after) == 0) {
+        return true;
+      }
+      if (before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < MIN_NORMAL_COSINE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Writes the unit normal of triangle (a, b, c) to `out`, with vertex `moved` at `p`
+  // instead, and returns twice its area
+  private double getNormal(int a, int b, int c, int moved, double[] p, double[] out) {
+    double ax = coordinate(a, 0, moved, p), ay = coordinate(a, 1, moved, p), az = coordinate(a, 2, moved, p);
+    double ux = coordinate(b, 0, moved, p) - ax, uy = coordinate(b, 1, moved, p) - ay, uz = coordinate(b, 2, moved, p) - az;
+    double vx = coordinate(c, 0, moved, p) - ax, vy = coordinate(c, 1, moved, p) - ay, vz = coordinate(c, 2, moved, p) - az;
+    double nx = uy * vz - uz * vy;
+    double ny = uz * vx - ux * vz;
+    double nz = ux * vy - uy * vx;
+    double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+    if (length > 0) {
+      out[0] = nx / length;
+      out[1] = ny / length;
+      out[2] = nz / length;
+    }
+    return length;
+  }
+
+  private double coordinate(int v, int axis, int moved, double[] p) {
+    return v == moved ? p[axis] : positions[v * 3 + axis];
+  }
+
+  private int countSharedTriangles(int a, int b) {
+    int shared = 0;
+    for (int i = 0; i < vertexTriangleCounts[a]; i++) {
+      int t = vertexTriangles[a][i];
+      if (!deleted[t] && contains(t, b)) {
+        shared++;
+      }
+    }
+    return shared;
+  }
+
+  private boolean contains(int t, int v) {
+    return triangles[t * 3] == v || triangles[t * 3 + 1] == v || triangles[t * 3 + 2] == v;
+  }
+
+  private void addVertexTriangle(int v, int t) {
+    if (vertexTriangleCounts[v] == vertexTriangles[v].length) {
+      vertexTriangles[v] = Arrays.copyOf(vertexTriangles[v], Math.max(4, vertexTriangles[v].length * 2));
+    }
+    vertexTriangles[v][vertexTriangleCounts[v]++] = t;
+  }
+
+  private Mesh toMesh() {
+    int[] index = new int[vertexCount];
+    Arrays.fill(index, -1);
+    Mesh mesh = new Mesh();
+    mesh.positions = new float[vertexCount * 3];
+    mesh.indices = new int[triangleCount * 3];
+
+    for (int t = 0; t < triangleCount; t++) {
+      if (deleted[t]) {
+        continue;
+      }
+      for (int k = 0; k < 3; k++) {
+        int v = triangles[t * 3 + k];
+        if (index[v] < 0) {
+          index[v] = mesh.vertexCount++;
+          mesh.positions[index[v] * 3] = (float) positions[v * 3];
+          mesh.positions[index[v] * 3 + 1] = (float) positions[v * 3 + 1];
+          mesh.positions[index[v] * 3 + 2] = (float) positions[v * 3 + 2];
+        }
+        mesh.indices[mesh.triangleCount * 3 + k] = index[v];
+      }
+      mesh.triangleCount++;
+    }
+
+    mesh.positions = Arrays.copyOf(mesh.positions, mesh.vertexCount * 3);
+    mesh.indices = Arrays.copyOf(mesh.indices, mesh.triangleCount * 3);
+    mesh.uvs = new float[mesh.vertexCount * 2];
+    mesh.normals = new float[mesh.vertexCount * 3];
+    mesh.colors = new int[mesh.vertexCount];
+    return mesh;
+  }
+
+  // Binary min-heap of candidate collapses, in primitive arrays since there are a few for
+  // every triangle
+  private static class EdgeHeap {
+    private double[] costs = new double[64];
+    // (a, b, version of a, version of b) per entry
+    private int[] entries = new int[64 * 4];
+    private int size;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void push(double cost, int a, int b, int versionA, int versionB) {
+      if (size == costs.length) {
+        costs = Arrays.copyOf(costs, size * 2);
+        entries = Arrays.copyOf(entries, size * 8);
+      }
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) / 2;
+        if (costs[parent] <= cost) {
+          break;
+        }
+        move(parent, i);
+        i = parent;
+      }
+      set(i, cost, a, b, versionA, versionB);
+    }
+
+    // Removes the cheapest entry and copies its (a, b, version of a, version of b) to `out`
+    void pop(int[] out) {
+      System.arraycopy(entries, 0, out, 0, 4);
+      size--;
+      if (size == 0) {
+        return;
+      }
+
+      double cost = costs[size];
+      int last = size * 4;
+      int a = entries[last], b = entries[last + 1], versionA = entries[last + 2], versionB = entries[last + 3];
+      int i = 0;
+      while (true) {
+        int child = i * 2 + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && costs[child + 1] < costs[child]) {
+          child++;
+        }
+        if (costs[child] >= cost) {
+          break;
+        }
+        move(child, i);
+        i = child;
+      }
+      set(i, cost, a, b, versionA, versionB);
+    }
+
+    private void move(int from, int to) {
+      costs[to] = costs[from];
+      System.arraycopy(entries, from * 4, entries, to * 4, 4);
+    }
+
+    private void set(int i, double cost, int a, int b, int versionA, int versionB) {
+      costs[i] = cost;
+      entries[i * 4] = a;
+      entries[i * 4 + 1] = b;
+      entries[i * 4 + 2] = versionA;
+      entries[i * 4 + 3] = versionB;
+    }
+  }
+}
@@ -1,15 +1,22 @@
 package spacefiller.modelmapper;
 
 import processing.core.*;
+import spacefiller.peasy.CameraState;
 import spacefiller.peasy.PeasyCam;
 import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 import processing.opengl.PGraphics3D;
 import processing.opengl.PShader;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.nio.file.Paths;
 import java.nio.file.Files;
 
@@ -18,6 +25,8 @@ import static spacefiller.modelmapper.Utils.*;
 
 public class ModelMapper {
   private static final float UI_CIRCLE_RADIUS = 10;
+  private static final String VIEWPOINTS_FILE = "viewpoints.bin";
+  private static final String BAKE_CACHE_DIRECTORY = "bake-cache";
 
   private enum Mode {
     CALIBRATE, RENDER
@@ -33,7 +42,10 @@ public class ModelMapper {
   private PGraphics3D modelCanvas;
   private PGraphics3D projectionCanvas;
 
-  private PShape model;
+  private Mesh mesh;
+  private long geometryHash;
+  // Geometry hash including texture coordinates, for keying the projector maps
+  private long texturedGeometryHash;
   private Mode mode;
   private CalibrationSpace space;
   private PeasyCam camera;
@@ -41,6 +53,19 @@ public class ModelMapper {
   private PVector selectedVertex;
   private Map<PVector, PVector> pointMapping;
   private CalibrationData calibrationData;
+  private CalibrationSettings calibrationSettings = new CalibrationSettings();
+  private DistortionCorrection distortionCorrection;
+  private IncrementalCalibration incrementalCalibration;
+  private ProjectorMaps projectorMaps;
+  private CalibrationData projectorMapsCalibration;
+  // Result of the last full solve. Dragging a point only re-solves the pose, and the maps
+  // aren't rebaked for those until the point is let go and this changes.
+  private CalibrationData settledCalibration;
+  private Future<ProjectorMaps> projectorMapsBake;
+  private CalibrationData projectorMapsBakeCalibration;
+  private BakeCache bakeCache;
+  private boolean dragging;
+  private Viewpoints viewpoints;
 
   PShader modelRenderShader;
 
@@ -51,12 +76,44 @@ public class ModelMapper {
   PImage uiPressSpace;
   private int uiPressSpaceCountdown;
 
+  private EventRecorder recorder;
+  private final Stats stats = new Stats();
+  private PerformanceHud hud;
+  private boolean hudVisible;
+  private int pickableVertexCount;
+  private LevelsOfDetail levelsOfDetail;
+  private PVector modelBoundsMin;
+  private PVector modelBoundsMax;
+
+  // The camera's model-view-projection with the y-flip `draw()` applies to `modelCanvas`,
+  // rebuilt only when the camera matrix changes. Used for picking and model space overlays.
+  private final float[] modelCanvasMatrix = new float[16];
+  private long modelCanvasMatrixVersion = -1;
+
   public ModelMapper(PApplet parent, PShape model) {
+    this(parent, model, null);
+  }
+
+  // Like `ModelMapper(parent, model)`, reporting on reading a large model to `progress`
+  // while it's done
+  public ModelMapper(PApplet parent, PShape model, Shapes.Progress progress) {
     try {
-      // If we share the model with the client, then when the client renders it, they can
-      // update state that will impact our ability to render it. For consistent rendering,
-      // make our own private copy.
-      this.model = Shapes.createShape(parent, model);
+      // Picking, bounds, baking and the calibration views' wireframe work with the model
+      // welded into a mesh, which takes a fraction of the memory of a PShape. The model is
+      // only read here, so that needs no copy of it.
+      this.mesh = Mesh.fromShape(model, progress);
+      this.geometryHash = Shapes.hashGeometry(model);
+      this.texturedGeometryHash = Shapes.hashGeometry(model, true);
+      this.pickableVertexCount = mesh.vertexCount;
+      // The mesh only has the model's triangles, so models with primitives, points or
+      // lines are drawn from the PShape instead. If we shared it with the client, then when
+      // the client renders it, they could update state that impacts our ability to render
+      // it. For consistent rendering, make our own private copy.
+      PShape wireframe = mesh.missingGeometry ? Shapes.createShape(parent, model, progress) : null;
+      this.levelsOfDetail = new LevelsOfDetail(mesh, wireframe);
+      this.modelBoundsMin = new PVector(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+      this.modelBoundsMax = new PVector(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+      mesh.getBounds(modelBoundsMin, modelBoundsMax);
 
       this.parent = parent;
       try {
@@ -82,9 +139,13 @@ public class ModelMapper {
       uiNoCalibration = parent.loadImage(IO.extractResourceToFile("/no-calibration.png"));
       uiPressSpace = parent.loadImage(IO.extractResourceToFile("/press-space.png"));
       uiPressSpaceCountdown = 1000;
+      distortionCorrection = new DistortionCorrection(parent);
+      incrementalCalibration = new IncrementalCalibration(parent.width, parent.height);
+      bakeCache = new BakeCache(parent.dataPath(BAKE_CACHE_DIRECTORY));
 
-      loadCalibration();
-      calibrationData = Calibration.calibrate(pointMapping, parent.width, parent.height);
+      loadCalibration(model);
+      loadViewpoints();
+      recalibrate();
     } catch (Exception e) {
       e.printStackTrace();
       throw e;
@@ -99,6 +160,122 @@ public class ModelMapper {
     this.mode = Mode.RENDER;
   }
 
+  // Starts logging mouse and key events, along with the camera state, to the given file in
+  // the sketch's data folder. The log can be replayed with `EventReplay`.
+  public void startRecording(String filename) {
+    stopRecording();
+    try {
+      String path = parent.dataPath(filename);
+      Files.createDirectories(Paths.get(path).getParent());
+      recorder = new EventRecorder(path);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public void stopRecording() {
+    if (recorder != null) {
+      try {
+        recorder.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      recorder = null;
+    }
+  }
+
+  public boolean isRecording() {
+    return recorder != null;
+  }
+
+  // Used by `EventReplay` to put the camera back where it was when an event was recorded.
+  void replayCameraState(CameraState state) {
+    camera.setState(state, 0);
+  }
+
+  private float[] getModelCanvasMatrix() {
+    float[] mvp = camera.getModelViewProjection();
+    long version = camera.getMatrixVersion();
+    if (version != modelCanvasMatrixVersion) {
+      // Fold in scale(1, -1, 1) by negating the y column
+      for (int i = 0; i < 16; i++) {
+        modelCanvasMatrix[i] = (i % 4 == 1) ? -mvp[i] : mvp[i];
+      }
+      modelCanvasMatrixVersion = version;
+    }
+    return modelCanvasMatrix;
+  }
+
+  // How many pixels of `modelCanvas` one unit of model space covers, at the distance of
+  // the camera's look-at point. Picks the wireframe's level of detail.
+  private float getModelCanvasPixelsPerUnit() {
+    // projection.m11 is 1 / tan(fovy / 2), negated since Processing flips y
+    return (float) (Math.abs(modelCanvas.projection.m11) * modelCanvas.height / 2 / camera.getDistance());
+  }
+
+  // Same as `getModelCanvasPixelsPerUnit()`, from the projector, at the center of the
+  // model's bounds
+  private float getProjectionPixelsPerUnit() {
+    if (modelBoundsMin.x > modelBoundsMax.x) {
+      return Float.POSITIVE_INFINITY;
+    }
+    PVector center = PVector.lerp(modelBoundsMin, modelBoundsMax, 0.5f);
+    // The projector looks down +z, see `draw()`
+    float depth = calibrationData.modelViewMatrix.multZ(center.x, center.y, center.z);
+    if (depth <= 0) {
+      return Float.POSITIVE_INFINITY;
+    }
+    return Math.abs(calibrationData.projectionMatrix.m11) * projectionCanvas.height / 2 / depth;
+  }
+
+  private PVector pickVertex(PVector mouse) {
+    long start = stats.start();
+    PVector vertex = getClosestPointOnMesh(mouse, mesh, getModelCanvasMatrix(), modelCanvas.width, modelCanvas.height);
+    stats.stop(Stats.Stage.PICK, start);
+    return vertex;
+  }
+
+  // Timing breakdown of picking, solving, persistence and rendering. Collection is off
+  // until enabled with `getStats().setEnabled(true)`.
+  public Stats getStats() {
+    return stats;
+  }
+
+  // Changes how the calibration is solved, e.g. to turn on robust mode, and re-solves
+  // the current calibration with the new settings
+  public void setCalibrationSettings(CalibrationSettings settings) {
+    this.calibrationSettings = settings;
+    recalibrate();
+  }
+
+  public CalibrationSettings getCalibrationSettings() {
+    return calibrationSettings;
+  }
+
+  // Shows or hides the performance HUD in calibration mode. Showing it turns on stats
+  // collection, since that is where its timings come from.
+  public void showHud(boolean visible) {
+    hudVisible = visible;
+    if (visible) {
+      stats.setEnabled(true);
+    }
+  }
+
+  public boolean isHudVisible() {
+    return hudVisible;
+  }
+
+  // Exposes `getStats()` over JMX, e.g. to watch a running show from JConsole or VisualVM.
+  public void registerStatsMBean(String name) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(
+          stats,
+          new ObjectName("spacefiller.modelmapper:type=Stats,name=" + ObjectName.quote(name)));
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
   public void begin() {
     parentGraphics.background(0);
 
@@ -117,6 +294,7 @@ public class ModelMapper {
     if (calibrationData.isReady()) {
       parentGraphics.popMatrix();
       parentGraphics.popProjection();
+      distortionCorrection.apply(parentGraphics);
     }
   }
 
@@ -129,41 +307,150 @@ public class ModelMapper {
     canvas.stroke(255);
     canvas.strokeWeight(2);
     canvas.shape(model);
-    canvas.endDraw();
+  }
+
+  private void recalibrate() {
+    long start = stats.start();
+    calibrationData = incrementalCalibration.solve(pointMapping, calibrationSettings);
+    finishCalibration(start);
+    settledCalibration = calibrationData;
+  }
+
+  // Cheaper version of `recalibrate()` for when only the correspondence for `modelPoint`
+  // changed. Only re-solves the pose, so a full `recalibrate()` should follow once the
+  // point settles.
+  private void recalibrate(PVector modelPoint, PVector imagePoint) {
+    long start = stats.start();
+    calibrationData = incrementalCalibration.update(modelPoint, imagePoint, calibrationSettings);
+    finishCalibration(start);
+  }
+
+  private void finishCalibration(long start) {
+    if (calibrationSettings.fitDepthRange && modelBoundsMin.x <= modelBoundsMax.x) {
+      Calibration.fitDepthRange(calibrationData, modelBoundsMin, modelBoundsMax, calibrationSettings.depthMargin);
+    }
+    distortionCorrection.update(calibrationData);
+    stats.stop(Stats.Stage.SOLVE, start);
+  }
+
+  // `Shapes.hashGeometry` of the model, for keying caches of anything derived from its
+  // geometry
+  public long getGeometryHash() {
+    return geometryHash;
+  }
+
+  // Per pixel model texture coordinates, positions, normals and depth for the current
+  // calibration, for drawing content as a full screen 2D pass. Baked the first time
+  // they're needed, and kept in the bake cache. After a recalibration, they're rebaked in
+  // the background and the previous maps are returned until the new ones are done; while
+  // a point is being dragged, they're left as they were. Returns null if there isn't a
+  // calibration yet.
+  public ProjectorMaps getProjectorMaps() {
+    if (projectorMapsBake != null && projectorMapsBake.isDone()) {
+      try {
+        projectorMaps = projectorMapsBake.get();
+      } catch (InterruptedException | ExecutionException e) {
+        System.out.println("ModelMapper: Couldn't bake the projector maps");
+        e.printStackTrace();
+      }
+      projectorMapsCalibration = projectorMapsBakeCalibration;
+      projectorMapsBake = null;
+    }
+
+    CalibrationData calibration = settledCalibration;
+    if (calibration == null || !calibration.isReady()) {
+      return null;
+    }
+    if (calibration != projectorMapsCalibration && projectorMapsBake == null) {
+      if (projectorMaps == null) {
+        projectorMaps = ProjectorMaps.load(texturedGeometryHash, mesh, calibration, bakeCache);
+        projectorMapsCalibration = calibration;
+      } else {
+        projectorMapsBakeCalibration = calibration;
+        projectorMapsBake = ForkJoinPool.commonPool().submit(() -> ProjectorMaps.load(texturedGeometryHash, mesh, calibration, bakeCache));
+      }
+    }
+    return projectorMaps;
+  }
+
+  // Where baked data like `getProjectorMaps()` is kept between runs, in the sketch's data
+  // folder. Use `setMaxBytes` to change how much disk space it may take.
+  public BakeCache getBakeCache() {
+    return bakeCache;
   }
 
   private void saveCalibration() {
+    long start = stats.start();
     try {
-      String path = parent.dataPath("calibration.ser");
-      Files.createDirectories(Paths.get(path).getParent());
-      FileOutputStream fileOutputStream = new FileOutputStream(path);
-      ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
-      objectOutputStream.writeObject(pointMapping);
-      objectOutputStream.flush();
-      objectOutputStream.close();
+      IO.writePointMapping(pointMapping, geometryHash, parent.dataPath("calibration.ser"));
     } catch (IOException e) {
       e.printStackTrace();
     }
+    stats.stop(Stats.Stage.PERSIST, start);
   }
 
-  private void loadCalibration() {
+  private void loadCalibration(PShape model) {
     pointMapping = new HashMap<>();
     try {
-      FileInputStream fileInputStream = new FileInputStream(parent.dataPath("calibration.ser"));
-      ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
-      pointMapping = (Map<PVector, PVector>) objectInputStream.readObject();
-      objectInputStream.close();
+      String path = parent.dataPath("calibration.ser");
+      IO.SavedCalibration saved = IO.readCalibration(path);
+      pointMapping = saved.getPointMapping(model);
+
+      if (saved.geometryHash != null && saved.geometryHash != geometryHash) {
+        System.out.println("ModelMapper: The saved calibration was made for a different model than this one.");
+        System.out.println("ModelMapper: If the model changed, its calibration points may no longer line up.");
+      }
     } catch (IOException | ClassNotFoundException e) {
       System.out.println("ModelMapper: Attempted to load calibration data, but it does not exist yet.");
       System.out.println("ModelMapper: If you have not yet calibrated your projection, this is normal!");
     }
   }
 
+  private void loadViewpoints() {
+    viewpoints = new Viewpoints();
+    try {
+      viewpoints = Viewpoints.load(parent.dataPath(VIEWPOINTS_FILE));
+    } catch (FileNotFoundException e) {
+      // No viewpoints have been saved yet
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // Saves the current calibration camera under `name`, replacing any viewpoint that
+  // already has that name.
+  public void saveViewpoint(String name) {
+    viewpoints.put(name, camera.getState());
+    try {
+      String path = parent.dataPath(VIEWPOINTS_FILE);
+      Files.createDirectories(Paths.get(path).getParent());
+      viewpoints.save(path);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // Jumps the calibration camera to the viewpoint saved under `name`. Returns false if
+  // there is no such viewpoint.
+  public boolean restoreViewpoint(String name) {
+    CameraState state = viewpoints.get(name);
+    if (state == null) {
+      return false;
+    }
+    camera.setState(state, 0);
+    return true;
+  }
+
+  public Viewpoints getViewpoints() {
+    return viewpoints;
+  }
+
   /**
    * Processing hooks
    */
 
   public void draw() {
+    long frameStart = stats.start();
     try {
       parent.resetShader();
       parent.noLights();
@@ -181,11 +468,13 @@ public class ModelMapper {
           camera.setActive(true);
           camera.feed();
 
+          long renderStart = stats.start();
           modelCanvas.beginDraw();
           modelCanvas.clear();
           modelCanvas.scale(1, -1, 1);
 
-          drawModel(model, modelCanvas);
+          drawModel(levelsOfDetail.getShape(parent, getModelCanvasPixelsPerUnit()), modelCanvas);
+          modelCanvas.endDraw();
 
           parent.resetShader();
 
@@ -202,27 +491,32 @@ public class ModelMapper {
           parent.vertex(parent.width, parent.height, 1, 1);
           parent.vertex(0, parent.height, 0, 1);
           parent.endShape();
+          stats.stop(Stats.Stage.MODEL_RENDER, renderStart);
 
-          PVector closestPoint = getClosestPointOnShape(mouse, model, modelCanvas);
+          PVector closestPoint = pickVertex(mouse);
+
+          long overlayStart = stats.start();
+          float[] mvp = getModelCanvasMatrix();
+          PVector projectedPoint = new PVector();
 
           for (PVector modelPoint : pointMapping.keySet()) {
-            PVector projectedPoint = worldToScreen(modelPoint, modelCanvas);
+            worldToScreen(modelPoint, mvp, modelCanvas.width, modelCanvas.height, projectedPoint);
             parent.noStroke();
             parent.fill(255, 200);
             parent.ellipse(projectedPoint.x, projectedPoint.y, UI_CIRCLE_RADIUS, UI_CIRCLE_RADIUS);
           }
 
           if (closestPoint != null) {
-            PVector projectedVertex = worldToScreen(closestPoint, modelCanvas);
+            worldToScreen(closestPoint, mvp, modelCanvas.width, modelCanvas.height, projectedPoint);
             parent.stroke(255);
             parent.strokeWeight(2);
             parent.noFill();
-            parent.ellipse(projectedVertex.x, projectedVertex.y, UI_CIRCLE_RADIUS + 5, UI_CIRCLE_RADIUS + 5);
+            parent.ellipse(projectedPoint.x, projectedPoint.y, UI_CIRCLE_RADIUS + 5, UI_CIRCLE_RADIUS + 5);
           }
 
           if (selectedVertex != null) {
-            PVector projectedVertex = worldToScreen(selectedVertex, modelCanvas);
-            drawCrossHairs(projectedVertex.x, projectedVertex.y, parent.color(255, 0, 255));
+            worldToScreen(selectedVertex, mvp, modelCanvas.width, modelCanvas.height, projectedPoint);
+            drawCrossHairs(projectedPoint.x, projectedPoint.y, parent.color(255, 0, 255));
           }
 
           parent.image(
@@ -231,9 +525,11 @@ public class ModelMapper {
               parent.height - uiModel.height / 2f - 20,
               uiModel.width / 2f,
               uiModel.height / 2f);
+          stats.stop(Stats.Stage.OVERLAY, overlayStart);
         } else if (space == CalibrationSpace.PIXEL_SPACE) {
           camera.setActive(false);
 
+          long renderStart = stats.start();
           if (calibrationData.isReady()) {
             projectionCanvas.beginDraw();
             projectionCanvas.clear();
@@ -243,7 +539,8 @@ public class ModelMapper {
             projectionCanvas.camera(0, 0, 0, 0, 0, 1, 0, -1, 0);
             projectionCanvas.applyMatrix(calibrationData.modelViewMatrix);
 
-            drawModel(model, projectionCanvas);
+            drawModel(levelsOfDetail.getShape(parent, getProjectionPixelsPerUnit()), projectionCanvas);
+            distortionCorrection.apply(projectionCanvas);
 
             projectionCanvas.endDraw();
           } else {
@@ -258,13 +555,27 @@ public class ModelMapper {
           }
 
           parent.image(projectionCanvas, 0, 0);
+          stats.stop(Stats.Stage.PROJECTION_RENDER, renderStart);
 
+          long overlayStart = stats.start();
           for (PVector modelPoint : pointMapping.keySet()) {
             PVector projectedPoint = pointMapping.get(modelPoint);
             parent.strokeWeight(5);
 
+            // Outliers are drawn in red, with a line to where the calibration actually
+            // projects them
+            boolean outlier = calibrationData.isOutlier(modelPoint);
+            if (outlier) {
+              PVector residual = calibrationData.getResidual(modelPoint);
+              parent.stroke(255, 0, 0);
+              parent.strokeWeight(1);
+              parent.line(
+                  projectedPoint.x, projectedPoint.y,
+                  projectedPoint.x + residual.x, projectedPoint.y + residual.y);
+            }
+
             parent.noStroke();
-            parent.fill(255, 200);
+            parent.fill(outlier ? parent.color(255, 0, 0, 200) : parent.color(255, 200));
             parent.ellipse(projectedPoint.x, projectedPoint.y, UI_CIRCLE_RADIUS, UI_CIRCLE_RADIUS);
             parent.fill(255);
             parent.ellipse(projectedPoint.x, projectedPoint.y, 2, 2);
@@ -289,10 +600,18 @@ public class ModelMapper {
             parent.height - uiProjection.height / 2f - 20,
             uiProjection.width / 2f,
             uiProjection.height / 2f);
+          stats.stop(Stats.Stage.OVERLAY, overlayStart);
         }
 
         // Draw mouse cross-hairs
         drawCrossHairs(parent.mouseX, parent.mouseY, parent.color(255));
+
+        if (hudVisible) {
+          if (hud == null) {
+            hud = new PerformanceHud(parent);
+          }
+          hud.draw(stats, calibrationData, pointMapping.size(), pickableVertexCount, modelCanvas, projectionCanvas);
+        }
       } else if (mode == Mode.RENDER) {
         camera.setActive(false);
         parent.cursor();
@@ -322,6 +641,7 @@ public class ModelMapper {
       e.printStackTrace();
       throw e;
     }
+    stats.stop(Stats.Stage.FRAME, frameStart);
   }
 
   private void drawCrossHairs(float x, float y, int color) {
@@ -336,6 +656,15 @@ public class ModelMapper {
   }
 
   public void mouseEvent(MouseEvent event) {
+    if (recorder != null) {
+      try {
+        recorder.record(event, camera.getState());
+      } catch (IOException e) {
+        e.printStackTrace();
+        stopRecording();
+      }
+    }
+
     PVector mouse = new PVector(event.getX(), event.getY());
 
     if (mode != Mode.CALIBRATE) {
@@ -345,7 +674,7 @@ public class ModelMapper {
 
     if (space == CalibrationSpace.MODEL_SPACE) {
       if (event.getAction() == MouseEvent.CLICK) {
-        selectedVertex = getClosestPointOnShape(mouse, model, modelCanvas);
+        selectedVertex = pickVertex(mouse);
       }
     } else if (space == CalibrationSpace.PIXEL_SPACE) {
       switch (event.getAction()) {
@@ -356,10 +685,25 @@ public class ModelMapper {
           }
           break;
         case MouseEvent.DRAG:
+          // While dragging, only the pose follows the point; the full solve happens when
+          // the point is released
+          if (selectedVertex != null) {
+            pointMapping.put(selectedVertex, mouse);
+            recalibrate(selectedVertex, mouse);
+            saveCalibration();
+            dragging = true;
+          }
+          break;
+        case MouseEvent.RELEASE:
+          if (dragging) {
+            recalibrate();
+            dragging = false;
+          }
+          break;
         case MouseEvent.CLICK:
           if (selectedVertex != null) {
             pointMapping.put(selectedVertex, mouse);
-            calibrationData = Calibration.calibrate(pointMapping, parent.width, parent.height);
+            recalibrate();
             saveCalibration();
           }
           break;
@@ -368,6 +712,15 @@ public class ModelMapper {
   }
 
   public void keyEvent(KeyEvent event) {
+    if (recorder != null) {
+      try {
+        recorder.record(event, camera.getState());
+      } catch (IOException e) {
+        e.printStackTrace();
+        stopRecording();
+      }
+    }
+
     if (event.getAction() == KeyEvent.PRESS) {
       if (event.getKeyCode() == 32) { // space
         uiPressSpaceCountdown = 300;
@@ -376,6 +729,17 @@ public class ModelMapper {
         space = (space == CalibrationSpace.MODEL_SPACE)
             ? CalibrationSpace.PIXEL_SPACE
             : CalibrationSpace.MODEL_SPACE;
+      } else if (event.getKeyCode() == 72 && mode == Mode.CALIBRATE) { // h
+        showHud(!hudVisible);
+      } else if (event.getKeyCode() >= '1' && event.getKeyCode() <= '9'
+          && mode == Mode.CALIBRATE && space == CalibrationSpace.MODEL_SPACE) {
+        // Number keys jump between saved viewpoints; shift + number saves one
+        String name = String.valueOf((char) event.getKeyCode());
+        if (event.isShiftDown()) {
+          saveViewpoint(name);
+        } else {
+          restoreViewpoint(name);
+        }
       }
     }
   }
@@ -0,0 +1,202 @@
+package spacefiller.modelmapper;
+
+import processing.core.PApplet;
+import processing.core.PGraphics;
+import processing.core.PImage;
+import processing.core.PMatrix3D;
+import processing.core.PShape;
+import processing.core.PVector;
+import processing.opengl.PGraphicsOpenGL;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static processing.core.PConstants.ARGB;
+import static processing.core.PConstants.P3D;
+
+// Renders a model as a calibrated projector sees it into an offscreen image, without a
+// window, mouse input or a running `ModelMapper`. Useful for pre-rendering content,
+// generating previews in batch and image regression tests.
+//
+// With a running OpenGL sketch, frames are drawn into an offscreen P3D buffer, and
+// `begin()` / `end()` work like `ModelMapper`'s for drawing arbitrary content. Without
+// one, e.g. on a build server with no display, `render()` falls back to a software
+// rasterizer. It draws the model with its fill colors, shaded by the angle it's seen at
+// from the projector; textures aren't supported.
+public class OffscreenRenderer {
+  private final int width;
+  private final int height;
+  private PShape model;
+  private final CalibrationData calibrationData;
+
+  private PGraphicsOpenGL canvas;
+  private DistortionCorrection distortionCorrection;
+  private SoftwareRasterizer rasterizer;
+
+  // Renders frames of `width` by `height` pixels, for a calibration made at that size
+  public OffscreenRenderer(PApplet parent, PShape model, Map<PVector, PVector> pointMapping, int width, int height) {
+    this(parent, model, pointMapping, width, height, width, height, new CalibrationSettings());
+  }
+
+  // Renders frames of `width` by `height` pixels, for a calibration made on a projector
+  // of `calibrationWidth` by `calibrationHeight` pixels. The calibration is solved at
+  // that size and then scaled to the output size, which may have a different aspect
+  // ratio. `parent` may be null, in which case frames are always rendered in software.
+  public OffscreenRenderer(
+      PApplet parent,
+      PShape model,
+      Map<PVector, PVector> pointMapping,
+      int calibrationWidth,
+      int calibrationHeight,
+      int width,
+      int height,
+      CalibrationSettings settings) {
+    this.width = width;
+    this.height = height;
+
+    PVector boundsMin = new PVector(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    PVector boundsMax = new PVector(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    Shapes.getBounds(model, boundsMin, boundsMax);
+
+    calibrationData = Calibration.calibrate(pointMapping, calibrationWidth, calibrationHeight, settings);
+    Calibration.resize(calibrationData, width, height);
+    if (settings.fitDepthRange && boundsMin.x <= boundsMax.x) {
+      Calibration.fitDepthRange(calibrationData, boundsMin, boundsMax, settings.depthMargin);
+    }
+
+    if (isOpenGLAvailable(parent)) {
+      try {
+        // Render a private copy, with its styles, so drawing the model elsewhere can't
+        // change how it renders here
+        this.model = Shapes.createShape(parent, model);
+        canvas = (PGraphicsOpenGL) parent.createGraphics(width, height, P3D);
+        distortionCorrection = new DistortionCorrection(parent);
+        distortionCorrection.update(calibrationData);
+        return;
+      } catch (RuntimeException e) {
+        System.out.println("ModelMapper: Could not create an OpenGL buffer, rendering in software (" + e + ")");
+        canvas = null;
+      }
+    }
+    this.model = model;
+    rasterizer = new SoftwareRasterizer(Mesh.fromShape(model), width, height);
+  }
+
+  // Loads a calibration saved by `ModelMapper`, which is stored in the sketch's data
+  // folder as calibration.ser
+  public static OffscreenRenderer load(
+      PApplet parent,
+      PShape model,
+      String calibrationPath,
+      int calibrationWidth,
+      int calibrationHeight,
+      int width,
+      int height) throws IOException, ClassNotFoundException {
+    Map<PVector, PVector> pointMapping = IO.readCalibration(calibrationPath).getPointMapping(model);
+    return new OffscreenRenderer(
+        parent, model, pointMapping, calibrationWidth, calibrationHeight, width, height, new CalibrationSettings());
+  }
+
+  private static boolean isOpenGLAvailable(PApplet parent) {
+    return parent != null && parent.g instanceof PGraphicsOpenGL && parent.getSurface() != null;
+  }
+
+  public boolean isSoftware() {
+    return rasterizer != null;
+  }
+
+  public CalibrationData getCalibrationData() {
+    return calibrationData;
+  }
+
+  // Starts drawing a frame and returns the buffer to draw into, set up with the
+  // calibrated projection. Only available with OpenGL.
+  public PGraphics begin() {
+    if (canvas == null) {
+      throw new IllegalStateException("ModelMapper: Drawing custom content offscreen needs an OpenGL sketch");
+    }
+
+    canvas.beginDraw();
+    canvas.background(0);
+    if (calibrationData.isReady()) {
+      canvas.resetMatrix();
+      canvas.setProjection(calibrationData.projectionMatrix);
+      canvas.camera(0, 0, 0, 0, 0, 1, 0, -1, 0);
+      canvas.applyMatrix(calibrationData.modelViewMatrix);
+    }
+    return canvas;
+  }
+
+  // Finishes the frame started with `begin()` and returns it
+  public PImage end() {
+    distortionCorrection.apply(canvas);
+    canvas.endDraw();
+    return canvas;
+  }
+
+  // Renders the model with its own style and returns the frame. Black if there isn't a
+  // calibration yet.
+  public PImage render() {
+    if (rasterizer != null) {
+      return renderSoftware();
+    }
+
+    PGraphics graphics = begin();
+    if (calibrationData.isReady()) {
+      graphics.lights();
+      graphics.shape(model);
+    }
+    return end();
+  }
+
+  // Renders a frame and saves it, in a format chosen by the extension of `path`
+  public void save(String path) {
+    render().save(path);
+  }
+
+  private PImage renderSoftware() {
+    PImage image = new PImage(width, height, ARGB);
+    image.loadPixels();
+    if (!calibrationData.isReady()) {
+      Arrays.fill(image.pixels, 0xFF000000);
+      image.updatePixels();
+      return image;
+    }
+
+    rasterizer.rasterize(calibrationData);
+
+    // Shade by how directly the projector faces the surface, so the geometry reads
+    PMatrix3D inverse = calibrationData.modelViewMatrix.get();
+    inverse.invert();
+    PVector projector = inverse.mult(new PVector(), null);
+
+    PVector normal = new PVector();
+    PVector toProjector = new PVector();
+    float[] position = new float[3];
+    int lastTriangle = -1;
+    for (int pixel = 0; pixel < image.pixels.length; pixel++) {
+      int t = rasterizer.triangles[pixel];
+      if (t < 0) {
+        image.pixels[pixel] = 0xFF000000;
+        continue;
+      }
+      if (t != lastTriangle) {
+        rasterizer.getNormal(t, normal);
+        lastTriangle = t;
+      }
+      rasterizer.interpolate(rasterizer.mesh.positions, 3, pixel, position);
+      toProjector.set(projector.x - position[0], projector.y - position[1], projector.z - position[2]);
+      toProjector.normalize();
+      float brightness = 0.2f + 0.8f * Math.abs(normal.dot(toProjector));
+
+      int color = rasterizer.interpolateColor(pixel);
+      int r = Math.round((color >> 16 & 0xFF) * brightness);
+      int g = Math.round((color >> 8 & 0xFF) * brightness);
+      int b = Math.round((color & 0xFF) * brightness);
+      image.pixels[pixel] = 0xFF000000 | r << 16 | g << 8 | b;
+    }
+    image.updatePixels();
+    return image;
+  }
+}
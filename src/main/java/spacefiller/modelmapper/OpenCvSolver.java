@@ -0,0 +1,223 @@
+package spacefiller.modelmapper;
+
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_java;
+import org.opencv.calib3d.Calib3d;
+import org.opencv.core.*;
+import processing.core.PMatrix3D;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.opencv.calib3d.Calib3d.Rodrigues;
+
+// Solves with OpenCV's `calibrateCamera` and `solvePnP`. This is the only class that
+// touches OpenCV, so the library works without the OpenCV natives on the classpath as
+// long as this backend isn't selected. Without the OpenCV classes, this class can't even
+// be linked; see `Calibration.isOpenCvAvailable()` for checking first.
+class OpenCvSolver implements PoseSolver {
+  static final OpenCvSolver INSTANCE = new OpenCvSolver();
+
+  private static boolean nativeLoaded = false;
+
+  private OpenCvSolver() {
+  }
+
+  static synchronized void loadNative() {
+    if (!nativeLoaded) {
+      Loader.load(opencv_java.class);
+      nativeLoaded = true;
+    }
+  }
+
+  @Override
+  public CameraSolution solve(
+      float[] packedObjectPoints,
+      float[] packedImagePoints,
+      int count,
+      int width,
+      int height,
+      boolean solveDistortion,
+      double f,
+      double cx,
+      double cy) {
+    loadNative();
+
+    // Prepare inputs to pass into OpenCV calibrateCamera function
+
+    MatOfPoint3f objectPoints = new MatOfPoint3f();
+    objectPoints.alloc(count);
+    objectPoints.put(0, 0, packedObjectPoints);
+
+    MatOfPoint2f imagePoints = new MatOfPoint2f();
+    imagePoints.alloc(count);
+    imagePoints.put(0, 0, packedImagePoints);
+
+    Size imageSize = new Size(width, height);
+
+    Mat cameraMatrix = new Mat(3, 3, CvType.CV_32FC1);
+    cameraMatrix.put(0, 0,
+        f, 0, cx,
+        0, f, cy,
+        0, 0, 1);
+
+    Mat distCoeffs = new Mat();
+
+    List<Mat> rvecs = new ArrayList<>();
+    List<Mat> tvecs = new ArrayList<>();
+
+    ArrayList<Mat> objectPointViews = new ArrayList<>();
+    objectPointViews.add(objectPoints);
+
+    ArrayList<Mat> imagePointViews = new ArrayList<>();
+    imagePointViews.add(imagePoints);
+
+    // Projector pixels are square, so the aspect ratio stays fixed. k3 mostly models the
+    // very edge of wide lenses and isn't well constrained by hand placed points.
+    int flags = Calib3d.CALIB_FIX_ASPECT_RATIO
+        | Calib3d.CALIB_FIX_K3
+        | Calib3d.CALIB_USE_INTRINSIC_GUESS;
+    if (!solveDistortion) {
+      flags |= Calib3d.CALIB_FIX_K1
+          | Calib3d.CALIB_FIX_K2
+          | Calib3d.CALIB_ZERO_TANGENT_DIST;
+    }
+
+    CameraSolution solution = new CameraSolution();
+
+    // `calibrateCamera` writes its output into the `rvecs` and `tvecs` matrices and
+    // returns the RMS reprojection error
+    try {
+      solution.rms = Calib3d.calibrateCamera(
+          objectPointViews,
+          imagePointViews,
+          imageSize,
+          cameraMatrix,
+          distCoeffs,
+          rvecs,
+          tvecs,
+          flags);
+    } catch (CvException e) {
+      return null;
+    }
+
+    // Prepare intput for calibrationMatrixValues function
+    double[] fovOutputX = new double[1];
+    double[] fovOutputY = new double[1];
+    double[] focalLengthOutput = new double[1];
+    Point principalPoint = new Point();
+    double[] aspectRatioOutput = new double[1];
+
+    // Call calibrationMatrixValues to get the `principalPoint` value (we don't use the
+    // other outputs of this function currently)
+    Calib3d.calibrationMatrixValues(
+        cameraMatrix,
+        imageSize,
+        0, 0,
+        fovOutputX,
+        fovOutputY,
+        focalLengthOutput,
+        principalPoint,
+        aspectRatioOutput);
+
+    solution.fx = cameraMatrix.get(0, 0)[0];
+    solution.fy = cameraMatrix.get(1, 1)[0];
+    solution.cx = principalPoint.x;
+    solution.cy = principalPoint.y;
+
+    if (!distCoeffs.empty()) {
+      int coefficientCount = Math.min(solution.distortion.length, (int) distCoeffs.total());
+      for (int i = 0; i < coefficientCount; i++) {
+        solution.distortion[i] = distCoeffs.get(i / distCoeffs.cols(), i % distCoeffs.cols())[0];
+      }
+    }
+
+    setPose(solution, rvecs.get(0), tvecs.get(0));
+    return solution;
+  }
+
+  @Override
+  public Refinement createRefinement(float[] packedObjectPoints, float[] packedImagePoints, int count) {
+    loadNative();
+
+    MatOfPoint3f objectPoints = new MatOfPoint3f();
+    objectPoints.alloc(count);
+    objectPoints.put(0, 0, packedObjectPoints);
+
+    MatOfPoint2f imagePoints = new MatOfPoint2f();
+    imagePoints.alloc(count);
+    imagePoints.put(0, 0, packedImagePoints);
+
+    return new Refinement() {
+      @Override
+      public void setImagePoint(int index, float x, float y) {
+        imagePoints.put(index, 0, x, y);
+      }
+
+      // Uses `solvePnP` with the previous pose as the extrinsic guess. SOLVEPNP_ITERATIVE
+      // runs Levenberg-Marquardt from there, which converges in a few iterations when a
+      // single point moved a little.
+      @Override
+      public CameraSolution refine(CameraSolution previous) {
+        Mat cameraMatrix = new Mat(3, 3, CvType.CV_64FC1);
+        cameraMatrix.put(0, 0,
+            previous.fx, 0, previous.cx,
+            0, previous.fy, previous.cy,
+            0, 0, 1);
+        MatOfDouble distCoeffs = new MatOfDouble(previous.distortion);
+
+        Mat rotationVector = new Mat(3, 1, CvType.CV_64FC1);
+        rotationVector.put(0, 0, previous.rotationVector);
+        Mat translationVector = new Mat(3, 1, CvType.CV_64FC1);
+        translationVector.put(0, 0, previous.translation);
+
+        try {
+          boolean solved = Calib3d.solvePnP(
+              objectPoints,
+              imagePoints,
+              cameraMatrix,
+              distCoeffs,
+              rotationVector,
+              translationVector,
+              true,
+              Calib3d.SOLVEPNP_ITERATIVE);
+          if (!solved) {
+            return null;
+          }
+        } catch (CvException e) {
+          return null;
+        }
+
+        CameraSolution solution = previous.withoutPose();
+        setPose(solution, rotationVector, translationVector);
+        return solution;
+      }
+    };
+  }
+
+  private static void setPose(CameraSolution solution, Mat rotationVector, Mat translationVector) {
+    rotationVector.get(0, 0, solution.rotationVector);
+    translationVector.get(0, 0, solution.translation);
+
+    Mat rotationMatrix = new Mat();
+    Rodrigues(rotationVector, rotationMatrix);
+    rotationMatrix.get(0, 0, solution.rotation);
+  }
+
+  // Helper function that takes the rotation and translation vector produced by
+  // `calibrateCamera` and returns a Processing matrix representing those transformations
+  static PMatrix3D makeModelMatrix(Mat rotationVector, Mat translation) {
+    loadNative();
+
+    Mat rotationMatrix = new Mat();
+    Rodrigues(rotationVector, rotationMatrix);
+
+    double[] tm = new double[3];
+    translation.get(0, 0, tm);
+
+    double[] rm = new double[9];
+    rotationMatrix.get(0, 0, rm);
+
+    return Calibration.makeModelMatrix(rm, tm);
+  }
+}
@@ -0,0 +1,78 @@
+package spacefiller.modelmapper;
+
+import processing.core.PApplet;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+import static processing.core.PConstants.*;
+
+// Text overlay shown in calibration mode with frame and solver timings and information
+// about the current calibration. The text is rendered into its own small canvas that is
+// only redrawn every `UPDATE_INTERVAL_MILLIS`; in between, drawing the HUD is a single
+// textured quad, so showing it barely affects the frame time it reports.
+class PerformanceHud {
+  private static final int UPDATE_INTERVAL_MILLIS = 500;
+  private static final int WIDTH = 320;
+  private static final int LINE_HEIGHT = 16;
+  private static final int PADDING = 10;
+  private static final int LINE_COUNT = 7;
+
+  private final PApplet parent;
+  private final PGraphics canvas;
+  private final PFont font;
+  private int lastUpdate = -UPDATE_INTERVAL_MILLIS;
+
+  PerformanceHud(PApplet parent) {
+    this.parent = parent;
+    this.canvas = parent.createGraphics(WIDTH, LINE_COUNT * LINE_HEIGHT + 2 * PADDING);
+    this.font = parent.createFont("Monospaced", 12);
+  }
+
+  void draw(
+      Stats stats,
+      CalibrationData calibrationData,
+      int correspondenceCount,
+      int pickableVertexCount,
+      PGraphics modelCanvas,
+      PGraphics projectionCanvas) {
+    if (parent.millis() - lastUpdate >= UPDATE_INTERVAL_MILLIS) {
+      lastUpdate = parent.millis();
+
+      String[] lines = new String[] {
+          String.format("frame      %6.2f ms  p99 %6.2f ms  %3.0f fps",
+              stats.getPercentileMillis(Stats.Stage.FRAME, 50),
+              stats.getPercentileMillis(Stats.Stage.FRAME, 99),
+              parent.frameRate),
+          String.format("solve      %6.2f ms  p99 %6.2f ms",
+              stats.getLast(Stats.Stage.SOLVE) / 1e6,
+              stats.getPercentileMillis(Stats.Stage.SOLVE, 99)),
+          String.format("pick       %6.2f ms  p99 %6.2f ms",
+              stats.getPercentileMillis(Stats.Stage.PICK, 50),
+              stats.getPercentileMillis(Stats.Stage.PICK, 99)),
+          Double.isNaN(calibrationData.reprojectionError)
+              ? "reprojection error      -"
+              : String.format("reprojection error %6.2f px  %d outliers",
+                  calibrationData.reprojectionError, calibrationData.getOutlierCount()),
+          "correspondences    " + correspondenceCount,
+          "pickable vertices  " + pickableVertexCount,
+          String.format("canvases   %dx%d, %dx%d",
+              modelCanvas.pixelWidth, modelCanvas.pixelHeight,
+              projectionCanvas.pixelWidth, projectionCanvas.pixelHeight)
+      };
+
+      canvas.beginDraw();
+      canvas.background(0, 180);
+      canvas.fill(255);
+      canvas.textFont(font);
+      canvas.textAlign(LEFT, TOP);
+      for (int i = 0; i < lines.length; i++) {
+        canvas.text(lines[i], PADDING, PADDING + i * LINE_HEIGHT);
+      }
+      canvas.endDraw();
+    }
+
+    parent.hint(DISABLE_DEPTH_TEST);
+    parent.image(canvas, 20, 20);
+    parent.hint(ENABLE_DEPTH_TEST);
+  }
+}
@@ -0,0 +1,36 @@
+package spacefiller.modelmapper;
+
+// Backend that solves for a camera from 3d to 2d point correspondences. `Calibration`
+// builds robust solves, multi-start searches and so on out of these two operations, and
+// picks the backend with `CalibrationSettings.backend`.
+//
+// Points are passed packed into arrays of `count` (x, y, z) object points and (x, y)
+// image points.
+interface PoseSolver {
+  // Solves for intrinsics and pose, starting from focal length `f` and principal point
+  // (`cx`, `cy`). The aspect ratio stays fixed at 1 and k3 at 0; the other distortion
+  // coefficients are only solved for if `solveDistortion` is set, and are zero otherwise.
+  // Returns null if there's no solution, which can happen with degenerate point sets.
+  CameraSolution solve(
+      float[] objectPoints,
+      float[] imagePoints,
+      int count,
+      int width,
+      int height,
+      boolean solveDistortion,
+      double f,
+      double cx,
+      double cy);
+
+  // Prepares to repeatedly re-solve just the pose for a fixed set of object points whose
+  // image points move
+  Refinement createRefinement(float[] objectPoints, float[] imagePoints, int count);
+
+  interface Refinement {
+    void setImagePoint(int index, float x, float y);
+
+    // Re-solves the pose, keeping the intrinsics and distortion of `previous` and starting
+    // from its pose. Returns null if there's no solution.
+    CameraSolution refine(CameraSolution previous);
+  }
+}
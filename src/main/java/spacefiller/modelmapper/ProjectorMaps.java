@@ -0,0 +1,371 @@
+package spacefiller.modelmapper;
+
+import processing.core.PImage;
+import processing.core.PMatrix3D;
+import processing.core.PShape;
+import processing.core.PVector;
+import processing.opengl.PShader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static processing.core.PConstants.ARGB;
+
+// What a calibrated projector hits on the model, for every projector pixel: texture
+// coordinates, position and normal in model space, and depth. These only change when the
+// calibration does, so content can be drawn as a single full screen 2D pass that looks
+// them up, instead of rendering the model for every frame.
+//
+// The maps are baked on the CPU with the full camera model, so lens distortion is
+// already accounted for and content drawn with them needs no further correction. Baking
+// takes a while for large models and projectors, so `load` keeps the maps in a
+// `BakeCache`, under a hash of the model and calibration. The maps are stored in a single
+// buffer laid out like the cache entry, a header followed by the raw arrays, so saving
+// is one write and loading a cached bake only maps the entry into memory.
+//
+// For shaders, `setUniforms` binds them as textures. Colors only have 8 bits, so
+// values that need more precision are stored as 16-bit fixed point values in [0, 1], with
+// two values per texture: the high bytes in red and green and the low bytes in blue and
+// alpha, as in `DistortionCorrection`. In GLSL:
+//
+//   vec2 coord = vec2(gl_FragCoord.x, resolution.y - gl_FragCoord.y) / resolution;
+//   vec4 texel = texture2D(uvMap, coord);
+//   vec2 uv = (texel.rg * 65280.0 + texel.ba * 255.0) / 65535.0;
+//
+// - uvMap: texture coordinates (u, v)
+// - positionMap: position (x, y), from boundsMin to boundsMax
+// - depthMap: position z, from boundsMin to boundsMax, and depth from depthRange.x to
+//   depthRange.y
+// - normalMap: normal, as rgb * 2 - 1, with alpha 1 where the projector hits the model
+//   and 0 elsewhere
+public class ProjectorMaps {
+  private static final int MAGIC = 0x4D4D504D; // "MMPM"
+  private static final short VERSION = 2;
+  private static final int HEADER_SIZE = 48;
+
+  public final int width;
+  public final int height;
+
+  // Per pixel, in rows from the top left: (u, v) texture coordinates, (x, y, z) position
+  // and unit normal in model space, and depth along the projector's view axis. Pixels
+  // where the projector misses the model have a depth of +infinity and zeros elsewhere.
+  // Normals are interpolated from the model's vertex normals, or are face normals if it
+  // has none, and face the projector. Read these with absolute `get(index)`.
+  public final FloatBuffer uv;
+  public final FloatBuffer position;
+  public final FloatBuffer normal;
+  public final FloatBuffer depth;
+
+  // Ranges the positions and depths fall in, used to store them in textures
+  public final PVector boundsMin = new PVector();
+  public final PVector boundsMax = new PVector();
+  public float nearDist;
+  public float farDist;
+
+  private PImage uvTexture;
+  private PImage positionTexture;
+  private PImage depthTexture;
+  private PImage normalTexture;
+
+  // Header followed by the uv, position, normal and depth arrays, little endian
+  private final ByteBuffer data;
+
+  private ProjectorMaps(int width, int height, ByteBuffer data) {
+    this.width = width;
+    this.height = height;
+    this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+
+    int pixels = width * height;
+    int offset = HEADER_SIZE;
+    uv = slice(offset, pixels * 2);
+    offset += pixels * 2 * 4;
+    position = slice(offset, pixels * 3);
+    offset += pixels * 3 * 4;
+    normal = slice(offset, pixels * 3);
+    offset += pixels * 3 * 4;
+    depth = slice(offset, pixels);
+  }
+
+  private FloatBuffer slice(int offset, int count) {
+    ByteBuffer bytes = data.duplicate();
+    bytes.position(offset);
+    bytes.limit(offset + count * 4);
+    return bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+  }
+
+  private static int getByteSize(int width, int height) {
+    return HEADER_SIZE + width * height * (2 + 3 + 3 + 1) * 4;
+  }
+
+  // Bakes the maps of `model` as seen through `calibrationData`, at the size of the
+  // projector it was calibrated for. Returns null if the calibration isn't ready.
+  public static ProjectorMaps bake(PShape model, CalibrationData calibrationData) {
+    return bake(Mesh.fromShape(model), calibrationData);
+  }
+
+  static ProjectorMaps bake(Mesh mesh, CalibrationData calibrationData) {
+    if (!calibrationData.isReady()) {
+      return null;
+    }
+
+    SoftwareRasterizer rasterizer = new SoftwareRasterizer(mesh, calibrationData.width, calibrationData.height);
+    rasterizer.rasterize(calibrationData);
+
+    int width = calibrationData.width;
+    int height = calibrationData.height;
+    ProjectorMaps maps = new ProjectorMaps(width, height, ByteBuffer.allocate(getByteSize(width, height)));
+    maps.nearDist = calibrationData.nearDist;
+    maps.farDist = calibrationData.farDist;
+    maps.boundsMin.set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    maps.boundsMax.set(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    mesh.getBounds(maps.boundsMin, maps.boundsMax);
+
+    PMatrix3D inverse = calibrationData.modelViewMatrix.get();
+    inverse.invert();
+    PVector projector = inverse.mult(new PVector(), null);
+
+    float[] value = new float[3];
+    PVector faceNormal = new PVector();
+    PVector vertexNormal = new PVector();
+    for (int pixel = 0; pixel < width * height; pixel++) {
+      int t = rasterizer.triangles[pixel];
+      if (t < 0) {
+        maps.depth.put(pixel, Float.POSITIVE_INFINITY);
+        continue;
+      }
+      maps.depth.put(pixel, rasterizer.depths[pixel]);
+
+      rasterizer.interpolate(mesh.uvs, 2, pixel, value);
+      maps.uv.put(pixel * 2, value[0]);
+      maps.uv.put(pixel * 2 + 1, value[1]);
+      rasterizer.interpolate(mesh.positions, 3, pixel, value);
+      maps.position.put(pixel * 3, value[0]);
+      maps.position.put(pixel * 3 + 1, value[1]);
+      maps.position.put(pixel * 3 + 2, value[2]);
+
+      // Smooth shading normals where the model has them; the face normal decides which
+      // side of the surface the projector is on
+      rasterizer.getNormal(t, faceNormal);
+      float facing = faceNormal.x * (projector.x - value[0])
+          + faceNormal.y * (projector.y - value[1])
+          + faceNormal.z * (projector.z - value[2]);
+      if (facing < 0) {
+        faceNormal.mult(-1);
+      }
+      if (mesh.hasNormals) {
+        rasterizer.interpolate(mesh.normals, 3, pixel, value);
+        vertexNormal.set(value[0], value[1], value[2]);
+        if (vertexNormal.magSq() > 1e-12f) {
+          vertexNormal.normalize();
+          if (vertexNormal.dot(faceNormal) < 0) {
+            vertexNormal.mult(-1);
+          }
+          faceNormal.set(vertexNormal);
+        }
+      }
+      maps.normal.put(pixel * 3, faceNormal.x);
+      maps.normal.put(pixel * 3 + 1, faceNormal.y);
+      maps.normal.put(pixel * 3 + 2, faceNormal.z);
+    }
+    maps.writeHeader();
+    return maps;
+  }
+
+  // Loads the maps for `model` and `calibrationData` from `cache`, or bakes and stores
+  // them there if they aren't cached yet. Returns null if the calibration isn't ready.
+  public static ProjectorMaps load(PShape model, CalibrationData calibrationData, BakeCache cache) {
+    if (!calibrationData.isReady()) {
+      return null;
+    }
+    return load(Shapes.hashGeometry(model, true), Mesh.fromShape(model), calibrationData, cache);
+  }
+
+  // Like `load(model, calibrationData, cache)`, for a model already welded into `mesh`
+  // whose `Shapes.hashGeometry(model, true)` is `geometryHash`. Doesn't touch the model,
+  // so it can run off the sketch's thread.
+  static ProjectorMaps load(long geometryHash, Mesh mesh, CalibrationData calibrationData, BakeCache cache) {
+    if (!calibrationData.isReady()) {
+      return null;
+    }
+
+    String key = hash(geometryHash, calibrationData);
+    try {
+      ByteBuffer entry = cache.get(key);
+      if (entry != null) {
+        return fromBuffer(entry, key);
+      }
+    } catch (IOException e) {
+      System.out.println("ModelMapper: Could not read cached projector maps, baking them again (" + e + ")");
+    }
+
+    ProjectorMaps maps = bake(mesh, calibrationData);
+    try {
+      cache.put(key, maps.data);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return maps;
+  }
+
+  public static ProjectorMaps load(PShape model, CalibrationData calibrationData, String cacheDirectory) {
+    return load(model, calibrationData, new BakeCache(cacheDirectory));
+  }
+
+  // Identifies the maps a model and calibration bake into: a SHA-256 of the geometry
+  // hash, including texture coordinates, and of everything about the calibration that
+  // affects where pixels land
+  static String hash(long geometryHash, CalibrationData calibrationData) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    buffer.putShort(VERSION);
+    buffer.putInt(calibrationData.width).putInt(calibrationData.height);
+    buffer.putDouble(calibrationData.fx).putDouble(calibrationData.fy);
+    buffer.putDouble(calibrationData.cx).putDouble(calibrationData.cy);
+    double[] distortion = calibrationData.distortion != null ? calibrationData.distortion : new double[5];
+    for (double coefficient : distortion) {
+      buffer.putDouble(coefficient);
+    }
+    for (float element : calibrationData.modelViewMatrix.get(null)) {
+      buffer.putFloat(element);
+    }
+    buffer.putFloat(calibrationData.nearDist).putFloat(calibrationData.farDist);
+    buffer.putLong(geometryHash);
+    digest.update(buffer.array(), 0, buffer.position());
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+
+  private void writeHeader() {
+    ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    header.clear();
+    header.putInt(MAGIC).putShort(VERSION).putInt(width).putInt(height);
+    header.putFloat(boundsMin.x).putFloat(boundsMin.y).putFloat(boundsMin.z);
+    header.putFloat(boundsMax.x).putFloat(boundsMax.y).putFloat(boundsMax.z);
+    header.putFloat(nearDist).putFloat(farDist);
+  }
+
+  private static ProjectorMaps fromBuffer(ByteBuffer data, String name) throws IOException {
+    ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    header.clear();
+    if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+      throw new IOException("Not a ModelMapper projector maps file: " + name);
+    }
+    short version = header.getShort();
+    if (version != VERSION) {
+      throw new IOException("Unsupported projector maps file version " + version + ": " + name);
+    }
+
+    int width = header.getInt();
+    int height = header.getInt();
+    if (data.capacity() != getByteSize(width, height)) {
+      throw new IOException("Truncated projector maps file: " + name);
+    }
+
+    ProjectorMaps maps = new ProjectorMaps(width, height, data);
+    maps.boundsMin.set(header.getFloat(), header.getFloat(), header.getFloat());
+    maps.boundsMax.set(header.getFloat(), header.getFloat(), header.getFloat());
+    maps.nearDist = header.getFloat();
+    maps.farDist = header.getFloat();
+    return maps;
+  }
+
+  // Binds the maps to `shader` as the uvMap, positionMap, depthMap and normalMap
+  // textures, along with the boundsMin, boundsMax and depthRange uniforms needed to decode
+  // them
+  public void setUniforms(PShader shader) {
+    shader.set("uvMap", getUVTexture());
+    shader.set("positionMap", getPositionTexture());
+    shader.set("depthMap", getDepthTexture());
+    shader.set("normalMap", getNormalTexture());
+    shader.set("boundsMin", boundsMin.x, boundsMin.y, boundsMin.z);
+    shader.set("boundsMax", boundsMax.x, boundsMax.y, boundsMax.z);
+    shader.set("depthRange", nearDist, farDist);
+  }
+
+  public PImage getUVTexture() {
+    if (uvTexture == null) {
+      uvTexture = createTexture();
+      for (int pixel = 0; pixel < width * height; pixel++) {
+        uvTexture.pixels[pixel] = encode(uv.get(pixel * 2), uv.get(pixel * 2 + 1));
+      }
+      uvTexture.updatePixels();
+    }
+    return uvTexture;
+  }
+
+  public PImage getPositionTexture() {
+    if (positionTexture == null) {
+      positionTexture = createTexture();
+      for (int pixel = 0; pixel < width * height; pixel++) {
+        positionTexture.pixels[pixel] = encode(
+            normalize(position.get(pixel * 3), boundsMin.x, boundsMax.x),
+            normalize(position.get(pixel * 3 + 1), boundsMin.y, boundsMax.y));
+      }
+      positionTexture.updatePixels();
+    }
+    return positionTexture;
+  }
+
+  public PImage getDepthTexture() {
+    if (depthTexture == null) {
+      depthTexture = createTexture();
+      for (int pixel = 0; pixel < width * height; pixel++) {
+        depthTexture.pixels[pixel] = encode(
+            normalize(position.get(pixel * 3 + 2), boundsMin.z, boundsMax.z),
+            normalize(depth.get(pixel), nearDist, farDist));
+      }
+      depthTexture.updatePixels();
+    }
+    return depthTexture;
+  }
+
+  public PImage getNormalTexture() {
+    if (normalTexture == null) {
+      normalTexture = createTexture();
+      for (int pixel = 0; pixel < width * height; pixel++) {
+        if (depth.get(pixel) == Float.POSITIVE_INFINITY) {
+          continue;
+        }
+        int r = Math.round((normal.get(pixel * 3) * 0.5f + 0.5f) * 255);
+        int g = Math.round((normal.get(pixel * 3 + 1) * 0.5f + 0.5f) * 255);
+        int b = Math.round((normal.get(pixel * 3 + 2) * 0.5f + 0.5f) * 255);
+        normalTexture.pixels[pixel] = 0xFF000000 | r << 16 | g << 8 | b;
+      }
+      normalTexture.updatePixels();
+    }
+    return normalTexture;
+  }
+
+  private PImage createTexture() {
+    PImage texture = new PImage(width, height, ARGB);
+    texture.loadPixels();
+    Arrays.fill(texture.pixels, 0);
+    return texture;
+  }
+
+  private static float normalize(float value, float min, float max) {
+    return max > min ? (value - min) / (max - min) : 0;
+  }
+
+  // Packs two values in [0, 1] as 16-bit fixed point, clamping values outside
+  private static int encode(float a, float b) {
+    int x = Math.round(Math.max(0, Math.min(1, a)) * 65535);
+    int y = Math.round(Math.max(0, Math.min(1, b)) * 65535);
+    return (y & 0xFF) << 24 | (x >> 8) << 16 | (y >> 8) << 8 | (x & 0xFF);
+  }
+}
@@ -0,0 +1,70 @@
+package spacefiller.modelmapper;
+
+// Optical properties of a projector, as found on its spec sheet, used to seed the
+// calibration with intrinsics close to the real ones.
+public class ProjectorProfile {
+  // Distance from the lens to the screen divided by the width of the projected image
+  public float throwRatio;
+
+  // Offset of the projected image from the lens axis, as a fraction of the image width
+  // (positive moves the image right) and height (positive moves the image up). Many
+  // projectors with fixed vertical offset are specified as e.g. 0.5 for an image that
+  // sits entirely above the lens axis.
+  public float lensShiftX;
+  public float lensShiftY;
+
+  // The projector's native resolution. If the sketch has a different aspect ratio, the
+  // projector is assumed to scale it to fit. Zero means the sketch fills the projector.
+  public int nativeWidth;
+  public int nativeHeight;
+
+  public ProjectorProfile(float throwRatio) {
+    this.throwRatio = throwRatio;
+  }
+
+  public ProjectorProfile(float throwRatio, float lensShiftX, float lensShiftY) {
+    this(throwRatio);
+    this.lensShiftX = lensShiftX;
+    this.lensShiftY = lensShiftY;
+  }
+
+  public ProjectorProfile(float throwRatio, float lensShiftX, float lensShiftY, int nativeWidth, int nativeHeight) {
+    this(throwRatio, lensShiftX, lensShiftY);
+    this.nativeWidth = nativeWidth;
+    this.nativeHeight = nativeHeight;
+  }
+
+  // Focal length in pixels of a `width` by `height` sketch shown by this projector
+  public double getFocalLength(int width, int height) {
+    return throwRatio * getProjectedWidth(width, height);
+  }
+
+  public double getPrincipalPointX(int width, int height) {
+    return width / 2.0 - lensShiftX * getProjectedWidth(width, height);
+  }
+
+  public double getPrincipalPointY(int width, int height) {
+    return height / 2.0 + lensShiftY * getProjectedHeight(width, height);
+  }
+
+  // Size, in sketch pixels, of the full image the projector shows. The sketch is centered
+  // in it.
+  private double getProjectedWidth(int width, int height) {
+    if (nativeWidth <= 0 || nativeHeight <= 0) {
+      return width;
+    }
+    return nativeWidth / getScale(width, height);
+  }
+
+  private double getProjectedHeight(int width, int height) {
+    if (nativeWidth <= 0 || nativeHeight <= 0) {
+      return height;
+    }
+    return nativeHeight / getScale(width, height);
+  }
+
+  // Native pixels per sketch pixel
+  private double getScale(int width, int height) {
+    return Math.min((double) nativeWidth / width, (double) nativeHeight / height);
+  }
+}
@@ -1,44 +1,491 @@
 package spacefiller.modelmapper;
 
 import processing.core.PApplet;
+import processing.core.PMatrix3D;
 import processing.core.PShape;
 import processing.core.PVector;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
 import static processing.core.PShape.*;
 
 
 public class Shapes {
+  private static final long HASH_SEED = 0xcbf29ce484222325L;
+
+  // Receives updates on a copy of a large model, or on reading it into a `Mesh`, on the
+  // thread that started it
+  public interface Progress {
+    void update(int copiedVertices, int totalVertices);
+  }
+
   static public PShape createShape(PApplet parent, PShape src) {
-    PShape dest = null;
-    if (src.getFamily() == GROUP) {
-      dest = parent.createShape(GROUP);
-      copyGroup(parent, src, dest);
-    } else if (src.getFamily() == GEOMETRY) {
-      dest = parent.createShape(GEOMETRY);
-      copyGeometry(src, dest);
-    } else if (src.getFamily() == PRIMITIVE) {
-      dest = parent.createShape(src.getKind(), src.getParams());
-    }
-    dest.setName(src.getName());
-    return dest;
+    return createShape(parent, src, null);
+  }
+
+  // Copies a shape and its descendants, reporting to `progress` (if not null) after each
+  // GEOMETRY shape is copied. Reading the geometry out of the source happens on the
+  // common fork-join pool, several shapes at a time, while the copies themselves are
+  // created on this thread, since Processing's shapes are tied to its OpenGL renderer.
+  static public PShape createShape(PApplet parent, PShape src, Progress progress) {
+    return new Copy(parent, src, progress).createShape(src);
   }
 
   static public void copyGroup(PApplet parent, PShape src, PShape dest) {
-    for (int i = 0; i < src.getChildCount(); i++) {
-      PShape c = createShape(parent, src.getChild(i));
-      dest.addChild(c);
-    }
+    new Copy(parent, src, null).copyGroup(src, dest);
   }
 
+  // Copies the vertices of a GEOMETRY shape with everything that affects how they render:
+  // texture coordinates, normals, fill and stroke colors and lighting materials per
+  // vertex, plus the shape's transform, style and texture
   static public void copyGeometry(PShape src, PShape dest) {
-    dest.beginShape(src.getKind());
+    Geometry.extract(src).copy(src, dest);
+  }
+
+  // Total number of vertices in a shape and all of its descendants
+  static public int countVertices(PShape shape) {
+    int count = shape.getVertexCount();
+    for (int i = 0; i < shape.getChildCount(); i++) {
+      count += countVertices(shape.getChild(i));
+    }
+    return count;
+  }
+
+  // Grows the box from `min` to `max` to contain every vertex of a shape and its
+  // descendants, where their transforms put them. Start with `min` at +infinity and `max`
+  // at -infinity to get the bounds of just the shape.
+  static public void getBounds(PShape shape, PVector min, PVector max) {
+    getBounds(shape, null, min, max);
+  }
+
+  private static void getBounds(PShape shape, PMatrix3D parentTransform, PVector min, PVector max) {
+    PMatrix3D transform = getTransform(shape, parentTransform);
+    PVector vertex = new PVector();
+    for (int i = 0; i < shape.getVertexCount(); i++) {
+      shape.getVertex(i, vertex);
+      if (transform != null) {
+        transform.mult(vertex.copy(), vertex);
+      }
+      min.set(Math.min(min.x, vertex.x), Math.min(min.y, vertex.y), Math.min(min.z, vertex.z));
+      max.set(Math.max(max.x, vertex.x), Math.max(max.y, vertex.y), Math.max(max.z, vertex.z));
+    }
+    for (int i = 0; i < shape.getChildCount(); i++) {
+      getBounds(shape.getChild(i), transform, min, max);
+    }
+  }
+
+  // The transform a shape applies to its vertices and its descendants, as set with
+  // `translate()`, `rotate()` and so on, or null if it has none. `getVertex()` returns
+  // vertices without it.
+  static PMatrix3D getMatrix(PShape shape) {
+    return Style.getMatrix(shape);
+  }
+
+  // The transform from a shape's vertices to its root's space, given the one for its
+  // parent. Null stands for no transform.
+  static PMatrix3D getTransform(PShape shape, PMatrix3D parentTransform) {
+    PMatrix3D matrix = getMatrix(shape);
+    if (matrix == null) {
+      return parentTransform;
+    }
+    if (parentTransform == null) {
+      return matrix;
+    }
+    PMatrix3D transform = parentTransform.get();
+    transform.apply(matrix);
+    return transform;
+  }
+
+  // Moves the model points of a point mapping that were picked on vertices as
+  // `getVertex()` returns them, without their shapes' transforms, to where the transforms
+  // put them. Points that aren't a vertex of a transformed shape are left as they are.
+  static Map<PVector, PVector> applyTransforms(PShape shape, Map<PVector, PVector> pointMapping) {
+    Map<PVector, PVector> transformedVertices = new HashMap<>();
+    collectTransformedVertices(shape, null, transformedVertices);
+    if (transformedVertices.isEmpty()) {
+      return pointMapping;
+    }
+
+    Map<PVector, PVector> transformed = new HashMap<>();
+    for (Map.Entry<PVector, PVector> entry : pointMapping.entrySet()) {
+      PVector modelPoint = transformedVertices.getOrDefault(entry.getKey(), entry.getKey());
+      transformed.put(modelPoint, entry.getValue());
+    }
+    return transformed;
+  }
+
+  private static void collectTransformedVertices(PShape shape, PMatrix3D parentTransform, Map<PVector, PVector> vertices) {
+    if (!shape.isVisible()) {
+      return;
+    }
+    PMatrix3D transform = getTransform(shape, parentTransform);
+    if (transform != null) {
+      for (int i = 0; i < shape.getVertexCount(); i++) {
+        PVector vertex = shape.getVertex(i);
+        vertices.putIfAbsent(vertex, transform.mult(vertex, null));
+      }
+    }
+    for (int i = 0; i < shape.getChildCount(); i++) {
+      collectTransformedVertices(shape.getChild(i), transform, vertices);
+    }
+  }
+
+  // Splits the vertices of a GEOMETRY shape into triangles according to its kind, and
+  // returns them as triples of vertex indices. Polygons are split into a fan, which is
+  // only right for convex ones. Points and lines have no triangles.
+  static int[] getTriangles(PShape shape) {
+    int n = shape.getVertexCount();
+    int kind = shape.getKind();
+    int[] triangles;
+    int count = 0;
+
+    if (kind == TRIANGLES) {
+      triangles = new int[n / 3 * 3];
+      for (int i = 0; i + 2 < n; i += 3) {
+        count = addTriangle(triangles, count, i, i + 1, i + 2);
+      }
+    } else if (kind == TRIANGLE_STRIP) {
+      triangles = new int[Math.max(0, n - 2) * 3];
+      for (int i = 0; i + 2 < n; i++) {
+        // Every other triangle of a strip is wound the other way
+        count = i % 2 == 0
+            ? addTriangle(triangles, count, i, i + 1, i + 2)
+            : addTriangle(triangles, count, i + 1, i, i + 2);
+      }
+    } else if (kind == QUADS) {
+      triangles = new int[n / 4 * 6];
+      for (int i = 0; i + 3 < n; i += 4) {
+        count = addTriangle(triangles, count, i, i + 1, i + 2);
+        count = addTriangle(triangles, count, i, i + 2, i + 3);
+      }
+    } else if (kind == QUAD_STRIP) {
+      triangles = new int[Math.max(0, (n - 2) / 2) * 6];
+      for (int i = 0; i + 3 < n; i += 2) {
+        count = addTriangle(triangles, count, i, i + 1, i + 3);
+        count = addTriangle(triangles, count, i, i + 3, i + 2);
+      }
+    } else if (kind == TRIANGLE_FAN || kind == POLYGON || kind == 0) {
+      triangles = new int[Math.max(0, n - 2) * 3];
+      for (int i = 1; i + 1 < n; i++) {
+        count = addTriangle(triangles, count, 0, i, i + 1);
+      }
+    } else {
+      triangles = new int[0];
+    }
+    return triangles;
+  }
+
+  private static int addTriangle(int[] triangles, int count, int a, int b, int c) {
+    triangles[count++] = a;
+    triangles[count++] = b;
+    triangles[count++] = c;
+    return count;
+  }
+
+  // 64-bit hash of a shape's geometry: vertex positions, transforms and topology (family,
+  // kind and the vertex and child counts of every shape in the tree), but not style. Used to tell
+  // whether a calibration or a baked cache was made for the same model. Children are
+  // hashed in parallel and combined in order.
+  static public long hashGeometry(PShape shape) {
+    return hashGeometry(shape, false);
+  }
+
+  // Like `hashGeometry(shape)`, optionally also hashing texture coordinates
+  static long hashGeometry(PShape shape, boolean textureCoordinates) {
+    long hash = HASH_SEED;
+    hash = mix(hash, shape.getFamily());
+    hash = mix(hash, shape.getKind());
+    hash = mix(hash, shape.getVertexCount());
+    hash = mix(hash, shape.getChildCount());
+
+    PMatrix3D matrix = getMatrix(shape);
+    if (matrix != null) {
+      for (float element : matrix.get(null)) {
+        hash = mix(hash, Float.floatToIntBits(element));
+      }
+    }
+
+    for (int i = 0; i < shape.getVertexCount(); i++) {
+      hash = mix(hash, Float.floatToIntBits(shape.getVertexX(i)));
+      hash = mix(hash, Float.floatToIntBits(shape.getVertexY(i)));
+      hash = mix(hash, Float.floatToIntBits(shape.getVertexZ(i)));
+      if (textureCoordinates) {
+        hash = mix(hash, Float.floatToIntBits(shape.getTextureU(i)));
+        hash = mix(hash, Float.floatToIntBits(shape.getTextureV(i)));
+      }
+    }
+
+    int childCount = shape.getChildCount();
+    IntStream children = IntStream.range(0, childCount);
+    if (childCount > 1) {
+      children = children.parallel();
+    }
+    long[] childHashes = children
+        .mapToLong(i -> hashGeometry(shape.getChild(i), textureCoordinates))
+        .toArray();
+    for (long childHash : childHashes) {
+      hash = mix(hash, (int) childHash);
+      hash = mix(hash, (int) (childHash >>> 32));
+    }
+
+    return finish(hash);
+  }
+
+  // FNV-1a over 32-bit words; cheap enough to run over every vertex of a large model
+  private static long mix(long hash, int value) {
+    return (hash ^ (value & 0xFFFFFFFFL)) * 0x100000001b3L;
+  }
+
+  // Spreads every input bit over the whole hash, as MurmurHash3's 64-bit finalizer
+  private static long finish(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+
+  // Copies a shape tree, extracting the geometry of up to `LOOKAHEAD` GEOMETRY shapes
+  // ahead of the one being created. The shapes are extracted in the order they're
+  // created in, so a copy never waits for more than the one it needs, and the lookahead
+  // keeps the extracted but not yet created geometry from piling up in memory.
+  private static class Copy {
+    private static final int LOOKAHEAD = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final PApplet parent;
+    private final Progress progress;
+
+    private final List<PShape> sources = new ArrayList<>();
+    private final ArrayDeque<Future<Geometry>> extracted = new ArrayDeque<>();
+    private int submitted;
+
+    private final int totalVertices;
+    private int copiedVertices;
+
+    Copy(PApplet parent, PShape src, Progress progress) {
+      this.parent = parent;
+      this.progress = progress;
+      collectGeometry(src);
+
+      int total = 0;
+      for (PShape source : sources) {
+        total += source.getVertexCount();
+      }
+      totalVertices = total;
+    }
+
+    private void collectGeometry(PShape shape) {
+      if (shape.getFamily() == GEOMETRY) {
+        sources.add(shape);
+      }
+      for (int i = 0; i < shape.getChildCount(); i++) {
+        collectGeometry(shape.getChild(i));
+      }
+    }
+
+    PShape createShape(PShape src) {
+      PShape dest = null;
+      if (src.getFamily() == GROUP) {
+        dest = parent.createShape(GROUP);
+        copyGroup(src, dest);
+      } else if (src.getFamily() == GEOMETRY) {
+        dest = parent.createShape(GEOMETRY);
+        copyGeometry(src, dest);
+      } else if (src.getFamily() == PRIMITIVE) {
+        dest = parent.createShape(src.getKind(), src.getParams());
+        Style.copyAll(src, dest);
+      }
+      dest.setName(src.getName());
+      dest.setVisible(src.isVisible());
+      return dest;
+    }
+
+    void copyGroup(PShape src, PShape dest) {
+      Style.copyTransform(src, dest);
+      for (int i = 0; i < src.getChildCount(); i++) {
+        PShape c = createShape(src.getChild(i));
+        dest.addChild(c);
+      }
+    }
+
+    // GEOMETRY shapes are reached in the same order `collectGeometry` found them in, so
+    // the next extraction in line is always this shape's
+    private void copyGeometry(PShape src, PShape dest) {
+      Geometry geometry;
+      if (sources.size() == 1 || ForkJoinPool.getCommonPoolParallelism() < 2) {
+        // Nothing to overlap with
+        geometry = Geometry.extract(src);
+      } else {
+        while (submitted < sources.size() && extracted.size() < LOOKAHEAD) {
+          PShape source = sources.get(submitted++);
+          extracted.add(ForkJoinPool.commonPool().submit(() -> Geometry.extract(source)));
+        }
+        try {
+          geometry = extracted.remove().get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while copying a shape", e);
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Couldn't copy a shape", e.getCause());
+        }
+      }
+      geometry.copy(src, dest);
+
+      copiedVertices += geometry.vertexCount;
+      if (progress != null) {
+        progress.update(copiedVertices, totalVertices);
+      }
+    }
+  }
+
+  // The vertices of a GEOMETRY shape and all of their attributes, read out into flat
+  // arrays. Reading only needs the source shape, so it can happen on any thread; writing
+  // the copy needs the renderer's thread.
+  private static class Geometry {
+    int vertexCount;
+    float[] positions;
+    float[] uvs;
+    float[] normals;
+    int[] fills;
+    int[] strokes;
+    float[] strokeWeights;
+    int[] ambients;
+    int[] speculars;
+    int[] emissives;
+    float[] shininesses;
+
+    // Reads the attributes straight out of the source's vertex arrays in a single pass,
+    // without a `PVector` per vertex
+    static Geometry extract(PShape src) {
+      int n = src.getVertexCount();
+      Geometry geometry = new Geometry();
+      geometry.vertexCount = n;
+      geometry.positions = new float[n * 3];
+      geometry.uvs = new float[n * 2];
+      geometry.normals = new float[n * 3];
+      geometry.fills = new int[n];
+      geometry.strokes = new int[n];
+      geometry.strokeWeights = new float[n];
+      geometry.ambients = new int[n];
+      geometry.speculars = new int[n];
+      geometry.emissives = new int[n];
+      geometry.shininesses = new float[n];
+
+      for (int i = 0; i < n; i++) {
+        geometry.positions[i * 3] = src.getVertexX(i);
+        geometry.positions[i * 3 + 1] = src.getVertexY(i);
+        geometry.positions[i * 3 + 2] = src.getVertexZ(i);
+        geometry.uvs[i * 2] = src.getTextureU(i);
+        geometry.uvs[i * 2 + 1] = src.getTextureV(i);
+        geometry.normals[i * 3] = src.getNormalX(i);
+        geometry.normals[i * 3 + 1] = src.getNormalY(i);
+        geometry.normals[i * 3 + 2] = src.getNormalZ(i);
+        geometry.fills[i] = src.getFill(i);
+        geometry.strokes[i] = src.getStroke(i);
+        geometry.strokeWeights[i] = src.getStrokeWeight(i);
+        geometry.ambients[i] = src.getAmbient(i);
+        geometry.speculars[i] = src.getSpecular(i);
+        geometry.emissives[i] = src.getEmissive(i);
+        geometry.shininesses[i] = src.getShininess(i);
+      }
+      return geometry;
+    }
 
-    for (int i = 0; i < src.getVertexCount(); i++) {
-      PVector vert = src.getVertex(i);
-      PVector uv = new PVector(src.getTextureU(i), src.getTextureV(i));
-      dest.vertex(vert.x, vert.y, vert.z, uv.x, uv.y);
+    // Writes the vertices into `dest`, with the kind, transform, style and texture of
+    // `src`. Like in a sketch, attributes are state that carries over to the next vertex,
+    // so each is only set when it changes.
+    void copy(PShape src, PShape dest) {
+      dest.beginShape(src.getKind());
+      Style.copyAll(src, dest);
+
+      int fill = 0, stroke = 0, ambient = 0, specular = 0, emissive = 0;
+      float strokeWeight = -1, shininess = Float.NaN;
+      float nx = Float.NaN, ny = Float.NaN, nz = Float.NaN;
+
+      for (int i = 0; i < vertexCount; i++) {
+        if (i == 0 || fills[i] != fill) {
+          fill = fills[i];
+          dest.fill(fill);
+        }
+        // A vertex added without stroke has a weight of 0; stroking it would turn the
+        // stroke back on for the rest of the shape
+        if (strokeWeights[i] > 0) {
+          if (strokeWeight < 0 || strokes[i] != stroke) {
+            stroke = strokes[i];
+            dest.stroke(stroke);
+          }
+          if (strokeWeights[i] != strokeWeight) {
+            strokeWeight = strokeWeights[i];
+            dest.strokeWeight(strokeWeight);
+          }
+        }
+        if (i == 0 || ambients[i] != ambient) {
+          ambient = ambients[i];
+          dest.ambient(ambient);
+        }
+        if (i == 0 || speculars[i] != specular) {
+          specular = speculars[i];
+          dest.specular(specular);
+        }
+        if (i == 0 || emissives[i] != emissive) {
+          emissive = emissives[i];
+          dest.emissive(emissive);
+        }
+        if (shininesses[i] != shininess) {
+          shininess = shininesses[i];
+          dest.shininess(shininess);
+        }
+        if (normals[i * 3] != nx || normals[i * 3 + 1] != ny || normals[i * 3 + 2] != nz) {
+          nx = normals[i * 3];
+          ny = normals[i * 3 + 1];
+          nz = normals[i * 3 + 2];
+          dest.normal(nx, ny, nz);
+        }
+        dest.vertex(positions[i * 3], positions[i * 3 + 1], positions[i * 3 + 2], uvs[i * 2], uvs[i * 2 + 1]);
+      }
+
+      dest.endShape();
+    }
+  }
+
+  // Processing keeps a shape's transform, style and texture in protected fields, and
+  // only exposes copying them to subclasses. The transform is read by copying it onto one.
+  private static class Style extends PShape {
+    static void copyAll(PShape src, PShape dest) {
+      PShape.copyMatrix(src, dest);
+      PShape.copyStyles(src, dest);
+      PShape.copyImage(src, dest);
     }
 
-    dest.endShape();
+    static void copyTransform(PShape src, PShape dest) {
+      PShape.copyMatrix(src, dest);
+    }
+
+    static PMatrix3D getMatrix(PShape shape) {
+      Style style = new Style();
+      PShape.copyMatrix(shape, style);
+      if (style.matrix == null) {
+        return null;
+      }
+      PMatrix3D matrix = new PMatrix3D();
+      matrix.apply(style.matrix);
+      return isIdentity(matrix) ? null : matrix;
+    }
+
+    private static boolean isIdentity(PMatrix3D m) {
+      return m.m00 == 1 && m.m01 == 0 && m.m02 == 0 && m.m03 == 0
+          && m.m10 == 0 && m.m11 == 1 && m.m12 == 0 && m.m13 == 0
+          && m.m20 == 0 && m.m21 == 0 && m.m22 == 1 && m.m23 == 0
+          && m.m30 == 0 && m.m31 == 0 && m.m32 == 0 && m.m33 == 1;
+    }
   }
 }
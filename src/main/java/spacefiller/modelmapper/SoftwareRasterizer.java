@@ -0,0 +1,184 @@
+package spacefiller.modelmapper;
+
+import processing.core.PMatrix3D;
+import processing.core.PVector;
+
+import java.util.Arrays;
+
+// Draws a model as a calibrated projector sees it, entirely on the CPU, for when there's
+// no OpenGL context to render with, e.g. on a build server.
+//
+// Rasterizing produces a visibility buffer: for every pixel, the nearest triangle and the
+// perspective correct weights of its vertices there. Anything else about the surface,
+// like its color or texture coordinates, is interpolated from those afterwards.
+//
+// Vertices are projected with the full camera model, lens distortion included, but the
+// edges between them stay straight, so a strongly distorting lens needs a finely
+// tessellated model to come out right.
+class SoftwareRasterizer {
+  final int width;
+  final int height;
+
+  final Mesh mesh;
+
+  // Per pixel: the index of the nearest triangle, or -1 if there is none; the weights of
+  // that triangle's second and third vertices, the first being 1 minus both; and the
+  // depth of the surface along the projector's view axis
+  final int[] triangles;
+  final float[] weights;
+  final float[] depths;
+
+  // Projected (x, y, depth) of every vertex
+  private final float[] projected;
+
+  SoftwareRasterizer(Mesh mesh, int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.mesh = mesh;
+
+    triangles = new int[width * height];
+    weights = new float[width * height * 2];
+    depths = new float[width * height];
+    projected = new float[mesh.vertexCount * 3];
+  }
+
+  // Fills the visibility buffer with the model as seen through `data`
+  void rasterize(CalibrationData data) {
+    Arrays.fill(triangles, -1);
+    Arrays.fill(depths, Float.POSITIVE_INFINITY);
+
+    PMatrix3D modelView = data.modelViewMatrix;
+    double[] distortion = data.distortion != null ? data.distortion : new double[5];
+    double k1 = distortion[0], k2 = distortion[1], p1 = distortion[2], p2 = distortion[3], k3 = distortion[4];
+
+    float[] positions = mesh.positions;
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      float x = positions[i * 3];
+      float y = positions[i * 3 + 1];
+      float z = positions[i * 3 + 2];
+      double xc = modelView.multX(x, y, z);
+      double yc = modelView.multY(x, y, z);
+      double zc = modelView.multZ(x, y, z);
+
+      double xn = xc / zc;
+      double yn = yc / zc;
+      double r2 = xn * xn + yn * yn;
+      double radial = 1 + r2 * (k1 + r2 * (k2 + r2 * k3));
+      double xd = xn * radial + 2 * p1 * xn * yn + p2 * (r2 + 2 * xn * xn);
+      double yd = yn * radial + p1 * (r2 + 2 * yn * yn) + 2 * p2 * xn * yn;
+
+      projected[i * 3] = (float) (data.fx * xd + data.cx);
+      projected[i * 3 + 1] = (float) (data.fy * yd + data.cy);
+      projected[i * 3 + 2] = (float) zc;
+    }
+
+    for (int t = 0; t < mesh.triangleCount; t++) {
+      rasterizeTriangle(t, data.nearDist);
+    }
+  }
+
+  private void rasterizeTriangle(int t, float nearDist) {
+    int a = mesh.indices[t * 3] * 3;
+    int b = mesh.indices[t * 3 + 1] * 3;
+    int c = mesh.indices[t * 3 + 2] * 3;
+    float x0 = projected[a], y0 = projected[a + 1], z0 = projected[a + 2];
+    float x1 = projected[b], y1 = projected[b + 1], z1 = projected[b + 2];
+    float x2 = projected[c], y2 = projected[c + 1], z2 = projected[c + 2];
+
+    // Triangles crossing the near plane are dropped rather than clipped
+    if (z0 < nearDist || z1 < nearDist || z2 < nearDist) {
+      return;
+    }
+
+    float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+    if (area == 0 || Float.isNaN(area)) {
+      return;
+    }
+
+    int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+    int maxX = Math.min(width - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+    int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+    int maxY = Math.min(height - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+
+    float inverseArea = 1 / area;
+    for (int y = minY; y <= maxY; y++) {
+      // Sample at pixel centers, like OpenGL
+      float py = y + 0.5f;
+      for (int x = minX; x <= maxX; x++) {
+        float px = x + 0.5f;
+        float l1 = ((x2 - x0) * (py - y0) - (y2 - y0) * (px - x0)) * -inverseArea;
+        float l2 = ((x1 - x0) * (py - y0) - (y1 - y0) * (px - x0)) * inverseArea;
+        float l0 = 1 - l1 - l2;
+        if (l0 < 0 || l1 < 0 || l2 < 0) {
+          continue;
+        }
+
+        // Screen space weights are off with perspective; weighting by 1 / depth and
+        // renormalizing gives the weights on the actual surface
+        float w0 = l0 / z0;
+        float w1 = l1 / z1;
+        float w2 = l2 / z2;
+        float depth = 1 / (w0 + w1 + w2);
+
+        int pixel = y * width + x;
+        if (depth < depths[pixel]) {
+          depths[pixel] = depth;
+          triangles[pixel] = t;
+          weights[pixel * 2] = w1 * depth;
+          weights[pixel * 2 + 1] = w2 * depth;
+        }
+      }
+    }
+  }
+
+  // Interpolates a per vertex attribute of the mesh with `size` components, like
+  // `positions` or `uvs`, at `pixel`. Returns false if no triangle covers the pixel.
+  boolean interpolate(float[] attribute, int size, int pixel, float[] out) {
+    int t = triangles[pixel];
+    if (t < 0) {
+      return false;
+    }
+    float w1 = weights[pixel * 2];
+    float w2 = weights[pixel * 2 + 1];
+    float w0 = 1 - w1 - w2;
+    int a = mesh.indices[t * 3] * size;
+    int b = mesh.indices[t * 3 + 1] * size;
+    int c = mesh.indices[t * 3 + 2] * size;
+    for (int i = 0; i < size; i++) {
+      out[i] = w0 * attribute[a + i] + w1 * attribute[b + i] + w2 * attribute[c + i];
+    }
+    return true;
+  }
+
+  // Interpolates the fill color at `pixel`, or returns 0 if no triangle covers it
+  int interpolateColor(int pixel) {
+    int t = triangles[pixel];
+    if (t < 0) {
+      return 0;
+    }
+    float w1 = weights[pixel * 2];
+    float w2 = weights[pixel * 2 + 1];
+    float w0 = 1 - w1 - w2;
+    int c0 = mesh.colors[mesh.indices[t * 3]];
+    int c1 = mesh.colors[mesh.indices[t * 3 + 1]];
+    int c2 = mesh.colors[mesh.indices[t * 3 + 2]];
+    int color = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      float channel = w0 * (c0 >>> shift & 0xFF) + w1 * (c1 >>> shift & 0xFF) + w2 * (c2 >>> shift & 0xFF);
+      color |= Math.min(255, Math.round(channel)) << shift;
+    }
+    return color;
+  }
+
+  // Unit normal of triangle `t` in model space, facing whichever way its winding makes it
+  void getNormal(int t, PVector out) {
+    float[] p = mesh.positions;
+    int a = mesh.indices[t * 3] * 3;
+    int b = mesh.indices[t * 3 + 1] * 3;
+    int c = mesh.indices[t * 3 + 2] * 3;
+    float ax = p[b] - p[a], ay = p[b + 1] - p[a + 1], az = p[b + 2] - p[a + 2];
+    float bx = p[c] - p[a], by = p[c + 1] - p[a + 1], bz = p[c + 2] - p[a + 2];
+    out.set(ay * bz - az * by, az * bx - ax * bz, ax * by - ay * bx);
+    out.normalize();
+  }
+}
@@ -0,0 +1,145 @@
+package spacefiller.modelmapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Timing breakdown of the work ModelMapper does each frame and in response to input.
+//
+// Probes are placed around each stage as
+//
+//   long start = stats.start();
+//   ...
+//   stats.stop(Stats.Stage.PICK, start);
+//
+// When stats are disabled (the default) `start` returns 0 without reading the clock and
+// `stop` returns immediately, so the probes cost a field read and a branch.
+public class Stats implements StatsMXBean {
+  public enum Stage {
+    FRAME, PICK, SOLVE, PERSIST, MODEL_RENDER, PROJECTION_RENDER, OVERLAY
+  }
+
+  private static final Stage[] STAGES = Stage.values();
+
+  private volatile boolean enabled;
+  private final Histogram[] histograms = new Histogram[STAGES.length];
+  private final long[] last = new long[STAGES.length];
+
+  public Stats() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new Histogram();
+    }
+  }
+
+  public long start() {
+    return enabled ? System.nanoTime() : 0;
+  }
+
+  public void stop(Stage stage, long start) {
+    if (!enabled || start == 0) {
+      return;
+    }
+    long elapsed = System.nanoTime() - start;
+    last[stage.ordinal()] = elapsed;
+    histograms[stage.ordinal()].record(elapsed);
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Histogram getHistogram(Stage stage) {
+    return histograms[stage.ordinal()];
+  }
+
+  // Duration of the most recent measurement of `stage`, in nanoseconds
+  public long getLast(Stage stage) {
+    return last[stage.ordinal()];
+  }
+
+  public double getPercentileMillis(Stage stage, double percentile) {
+    return histograms[stage.ordinal()].getPercentile(percentile) / 1e6;
+  }
+
+  @Override
+  public void reset() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i].reset();
+      last[i] = 0;
+    }
+  }
+
+  @Override
+  public Map<String, Long> getCounts() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    for (Stage stage : STAGES) {
+      result.put(stage.name(), getHistogram(stage).getCount());
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getLastMillis() {
+    Map<String, Double> result = new LinkedHashMap<>();
+    for (Stage stage : STAGES) {
+      result.put(stage.name(), getLast(stage) / 1e6);
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getMeanMillis() {
+    Map<String, Double> result = new LinkedHashMap<>();
+    for (Stage stage : STAGES) {
+      result.put(stage.name(), getHistogram(stage).getMean() / 1e6);
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getP50Millis() {
+    return getPercentilesMillis(50);
+  }
+
+  @Override
+  public Map<String, Double> getP99Millis() {
+    return getPercentilesMillis(99);
+  }
+
+  @Override
+  public Map<String, Double> getMaxMillis() {
+    return getPercentilesMillis(100);
+  }
+
+  private Map<String, Double> getPercentilesMillis(double percentile) {
+    Map<String, Double> result = new LinkedHashMap<>();
+    for (Stage stage : STAGES) {
+      result.put(stage.name(), getPercentileMillis(stage, percentile));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("Stats{");
+    for (Stage stage : STAGES) {
+      Histogram histogram = getHistogram(stage);
+      if (histogram.getCount() == 0) {
+        continue;
+      }
+      builder.append(String.format("%n  %-17s n=%-7d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+          stage.name(),
+          histogram.getCount(),
+          histogram.getPercentile(50) / 1e6,
+          histogram.getPercentile(90) / 1e6,
+          histogram.getPercentile(99) / 1e6,
+          histogram.getMax() / 1e6));
+    }
+    return builder.append("\n}").toString();
+  }
+}
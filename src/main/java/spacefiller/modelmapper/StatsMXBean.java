@@ -0,0 +1,24 @@
+package spacefiller.modelmapper;
+
+import java.util.Map;
+
+// JMX view of `Stats`, keyed by stage name. Times are in milliseconds.
+public interface StatsMXBean {
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  Map<String, Long> getCounts();
+
+  Map<String, Double> getLastMillis();
+
+  Map<String, Double> getMeanMillis();
+
+  Map<String, Double> getP50Millis();
+
+  Map<String, Double> getP99Millis();
+
+  Map<String, Double> getMaxMillis();
+
+  void reset();
+}
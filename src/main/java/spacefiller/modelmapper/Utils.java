@@ -14,6 +14,33 @@ public class Utils {
     return new PVector(screenX, screenY, screenZ);
   }
 
+  // Same as `worldToScreen(vertex, graphics)`, but projects with a precomputed row-major
+  // model-view-projection matrix (see `PeasyCam.getModelViewProjection()`) instead of
+  // having the graphics context multiply its matrices once per output coordinate.
+  // Writes into `out` and returns it.
+  public static PVector worldToScreen(PVector vertex, float[] mvp, int width, int height, PVector out) {
+    float x = vertex.x;
+    float y = vertex.y;
+    float z = vertex.z;
+
+    float ox = mvp[0] * x + mvp[1] * y + mvp[2] * z + mvp[3];
+    float oy = mvp[4] * x + mvp[5] * y + mvp[6] * z + mvp[7];
+    float oz = mvp[8] * x + mvp[9] * y + mvp[10] * z + mvp[11];
+    float ow = mvp[12] * x + mvp[13] * y + mvp[14] * z + mvp[15];
+
+    if (ow != 0) {
+      ox /= ow;
+      oy /= ow;
+      oz /= ow;
+    }
+
+    // Matches PGraphicsOpenGL's screenX/Y/Z, including the flipped y axis
+    out.x = width * (1 + ox) / 2f;
+    out.y = height - height * (1 + oy) / 2f;
+    out.z = (oz + 1) / 2f;
+    return out;
+  }
+
   public static PVector getClosestPointOnShape(PVector point, PShape shape, PGraphics3D graphics) {
     if (shape.getChildCount() > 0) {
       for (PShape child : shape.getChildren()) {
@@ -45,6 +72,67 @@ public class Utils {
     return null;
   }
 
+  // Same as `getClosestPointOnShape(point, shape, graphics)`, but projects vertices with a
+  // precomputed model-view-projection matrix.
+  public static PVector getClosestPointOnShape(PVector point, PShape shape, float[] mvp, int width, int height) {
+    if (shape.getChildCount() > 0) {
+      for (PShape child : shape.getChildren()) {
+        PVector closest = getClosestPointOnShape(point, child, mvp, width, height);
+        if (closest != null) {
+          return closest;
+        }
+      }
+    }
+
+    if (shape.getVertexCount() > 0) {
+      PVector closest = null;
+      float minDistance = 1000;
+      float selectionRadius = 10;
+      PVector projectedVertex = new PVector();
+
+      for (int i = 0; i < shape.getVertexCount(); i++) {
+        PVector vertex = shape.getVertex(i);
+        worldToScreen(vertex, mvp, width, height, projectedVertex);
+        float dist = projectedVertex.dist(point);
+        if (dist < selectionRadius && projectedVertex.z < minDistance) {
+          closest = vertex;
+          minDistance = projectedVertex.z;
+        }
+      }
+
+      return closest;
+    }
+
+    return null;
+  }
+
+  // Same as `getClosestPointOnShape(point, shape, mvp, width, height)`, for a welded mesh.
+  // Returns the nearest vertex to the camera among those within the selection radius of
+  // `point`, or null if there is none.
+  static PVector getClosestPointOnMesh(PVector point, Mesh mesh, float[] mvp, int width, int height) {
+    int closest = -1;
+    float minDistance = 1000;
+    float selectionRadius = 10;
+    PVector vertex = new PVector();
+    PVector projectedVertex = new PVector();
+
+    for (int i = 0; i < mesh.vertexCount; i++) {
+      mesh.getVertex(i, vertex);
+      worldToScreen(vertex, mvp, width, height, projectedVertex);
+      float dist = projectedVertex.dist(point);
+      if (dist < selectionRadius && projectedVertex.z < minDistance) {
+        closest = i;
+        minDistance = projectedVertex.z;
+      }
+    }
+
+    if (closest < 0) {
+      return null;
+    }
+    mesh.getVertex(closest, vertex);
+    return vertex;
+  }
+
 //  public static PVector getClosestPointByMappedPoint(PVector queryPoint) {
 //    return getClosestPointByMappedPoint(queryPoint, pointMapping);
 //  }
@@ -0,0 +1,76 @@
+package spacefiller.modelmapper;
+
+import spacefiller.peasy.CameraState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Named camera viewpoints used while calibrating, so that operators can jump between
+// saved views of the model. Stored as a small binary file: a header (magic number, format
+// version and entry count) followed by one name and fixed-size camera state per entry.
+public class Viewpoints {
+  private static final int MAGIC = 0x4D4D5650; // "MMVP"
+  private static final short VERSION = 1;
+
+  private final Map<String, CameraState> states = new LinkedHashMap<>();
+
+  public void put(String name, CameraState state) {
+    states.put(name, state);
+  }
+
+  public CameraState get(String name) {
+    return states.get(name);
+  }
+
+  public void remove(String name) {
+    states.remove(name);
+  }
+
+  public Set<String> getNames() {
+    return Collections.unmodifiableSet(states.keySet());
+  }
+
+  public int size() {
+    return states.size();
+  }
+
+  public void save(String path) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+      out.writeInt(states.size());
+      for (Map.Entry<String, CameraState> entry : states.entrySet()) {
+        out.writeUTF(entry.getKey());
+        entry.getValue().writeTo(out);
+      }
+    }
+  }
+
+  public static Viewpoints load(String path) throws IOException {
+    Viewpoints viewpoints = new Viewpoints();
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a ModelMapper viewpoints file: " + path);
+      }
+      short version = in.readShort();
+      if (version != VERSION) {
+        throw new IOException("Unsupported viewpoints file version " + version + ": " + path);
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        viewpoints.put(name, CameraState.readFrom(in));
+      }
+    }
+    return viewpoints;
+  }
+}
@@ -18,6 +18,9 @@
  */
 package spacefiller.peasy;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
 
 import spacefiller.peasy.org.apache.commons.math.geometry.Rotation;
@@ -27,6 +30,13 @@ import processing.core.PGraphics;
 
 public class CameraState implements Serializable {
 	private static final long serialVersionUID = 1L;
+
+	/** Version byte that starts the binary encoding written by {@link #writeTo(DataOutput)}. */
+	public static final byte ENCODING_VERSION = 1;
+
+	/** Size in bytes of the binary encoding: the version byte followed by 7 doubles. */
+	public static final int ENCODED_SIZE = 1 + 7 * 8;
+
 	final Rotation rotation;
 	final Vector3D center;
 	final double distance;
@@ -38,6 +48,66 @@ public class CameraState implements Serializable {
 		this.distance = distance;
 	}
 
+	public Rotation getRotation() {
+		return rotation;
+	}
+
+	public Vector3D getCenter() {
+		return center;
+	}
+
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Write this state as a fixed-size binary record of {@link #ENCODED_SIZE} bytes.
+	 * 
+	 * <p>
+	 * The rotation is stored as the vectorial part of its quaternion, with the sign chosen
+	 * so that the scalar part is positive; the scalar part is recovered from the unit norm
+	 * when reading. Center and distance are stored as is.
+	 * 
+	 * @param out
+	 *            destination of the record
+	 * @throws IOException
+	 *             if writing fails
+	 */
+	public void writeTo(final DataOutput out) throws IOException {
+		final double sign = rotation.getQ0() < 0 ? -1 : 1;
+		out.writeByte(ENCODING_VERSION);
+		out.writeDouble(sign * rotation.getQ1());
+		out.writeDouble(sign * rotation.getQ2());
+		out.writeDouble(sign * rotation.getQ3());
+		out.writeDouble(center.getX());
+		out.writeDouble(center.getY());
+		out.writeDouble(center.getZ());
+		out.writeDouble(distance);
+	}
+
+	/**
+	 * Read a state written by {@link #writeTo(DataOutput)}.
+	 * 
+	 * @param in
+	 *            source of the record
+	 * @return the decoded state
+	 * @throws IOException
+	 *             if reading fails or the record has an unknown version
+	 */
+	public static CameraState readFrom(final DataInput in) throws IOException {
+		final byte version = in.readByte();
+		if (version != ENCODING_VERSION) {
+			throw new IOException("Unsupported camera state encoding version " + version);
+		}
+		final double q1 = in.readDouble();
+		final double q2 = in.readDouble();
+		final double q3 = in.readDouble();
+		final double q0 = Math.sqrt(Math.max(0, 1 - (q1 * q1 + q2 * q2 + q3 * q3)));
+		final Vector3D center = new Vector3D(in.readDouble(), in.readDouble(), in.readDouble());
+		final double distance = in.readDouble();
+		return new CameraState(new Rotation(q0, q1, q2, q3, true), center, distance);
+	}
+
 	public void apply(final PApplet a) {
 		if (a.recorder != null) {
 			apply(a.recorder);
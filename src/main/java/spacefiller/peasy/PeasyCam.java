@@ -25,6 +25,7 @@ import spacefiller.peasy.org.apache.commons.math.geometry.Vector3D;
 import processing.core.PApplet;
 import processing.core.PConstants;
 import processing.core.PGraphics;
+import processing.core.PMatrix3D;
 import processing.event.KeyEvent;
 import processing.event.MouseEvent;
 import processing.opengl.PGraphicsOpenGL;
@@ -107,6 +108,19 @@ public class PeasyCam {
 	private final PeasyEventListener peasyEventListener = new PeasyEventListener();
 	private boolean isActive = false;
 
+	// camera state last pushed to the canvas by feed()
+	private Rotation fedRotation;
+	private Vector3D fedCenter;
+	private double fedDistance = Double.NaN;
+	private boolean stateChanged = true;
+
+	// cached projection * camera matrix, and the canvas matrices it was built from
+	private final PMatrix3D modelViewProjectionMatrix = new PMatrix3D();
+	private final float[] modelViewProjection = new float[16];
+	private final float[] cachedProjection = new float[16];
+	private final float[] cachedCamera = new float[16];
+	private long matrixVersion = 0;
+
 
 
 	public PeasyCam(final PApplet parent, final double distance) {
@@ -463,11 +477,59 @@ public class PeasyCam {
 	}
 
 	public void feed() {
-		final Vector3D pos = rotation.applyTo(LOOK).scalarMultiply(distance).add(center);
-		final Vector3D rup = rotation.applyTo(UP);
-		g.camera((float)pos.getX(), (float)pos.getY(), (float)pos.getZ(), //
-				(float)center.getX(), (float)center.getY(), (float)center.getZ(), //
-				(float)rup.getX(), (float)rup.getY(), (float)rup.getZ());
+		// Rotations and vectors are immutable, so the state changed iff a field was replaced
+		if (rotation != fedRotation || center != fedCenter || distance != fedDistance) {
+			fedRotation = rotation;
+			fedCenter = center;
+			fedDistance = distance;
+			stateChanged = true;
+		}
+		apply(g, center, rotation, distance);
+	}
+
+	/**
+	 * The canvas' projection matrix multiplied by the camera matrix, as a row-major
+	 * float[16] in the layout of {@link PMatrix3D#get(float[])}.
+	 * 
+	 * <p>
+	 * The matrix is cached and only rebuilt when the camera state changed since it was
+	 * last read, or when something other than this camera replaced the canvas' camera or
+	 * projection. The returned array is shared; callers must not modify it.
+	 * 
+	 * @return float[16] model-view-projection matrix
+	 * @see #getMatrixVersion()
+	 */
+	public float[] getModelViewProjection() {
+		final PGraphicsOpenGL pgl = (PGraphicsOpenGL)g;
+		if (stateChanged || !matches(pgl.projection, cachedProjection)
+				|| !matches(pgl.camera, cachedCamera)) {
+			pgl.projection.get(cachedProjection);
+			pgl.camera.get(cachedCamera);
+			modelViewProjectionMatrix.set(pgl.projection);
+			modelViewProjectionMatrix.apply(pgl.camera);
+			modelViewProjectionMatrix.get(modelViewProjection);
+			stateChanged = false;
+			matrixVersion++;
+		}
+		return modelViewProjection;
+	}
+
+	/**
+	 * Incremented every time the matrix returned by {@link #getModelViewProjection()} is
+	 * rebuilt, so that consumers can cache values derived from it.
+	 * 
+	 * @return version of the current model-view-projection matrix
+	 */
+	public long getMatrixVersion() {
+		getModelViewProjection();
+		return matrixVersion;
+	}
+
+	private static boolean matches(final PMatrix3D m, final float[] a) {
+		return m.m00 == a[0] && m.m01 == a[1] && m.m02 == a[2] && m.m03 == a[3]
+				&& m.m10 == a[4] && m.m11 == a[5] && m.m12 == a[6] && m.m13 == a[7]
+				&& m.m20 == a[8] && m.m21 == a[9] && m.m22 == a[10] && m.m23 == a[11]
+				&& m.m30 == a[12] && m.m31 == a[13] && m.m32 == a[14] && m.m33 == a[15];
 	}
 
 	static void apply(final PGraphics g, final Vector3D center, final Rotation rotation,
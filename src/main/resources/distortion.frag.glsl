@@ -0,0 +1,36 @@
+#ifdef GL_ES
+precision highp float;
+precision mediump int;
+#endif
+
+#define PROCESSING_TEXTURE_SHADER
+
+uniform sampler2D texture;
+uniform sampler2D lookup;
+uniform vec2 lookupSize;
+uniform float lookupStep;
+uniform vec2 resolution;
+uniform float maxOffset;
+
+varying vec4 vertColor;
+varying vec4 vertTexCoord;
+
+void main(void) {
+    // The frame is stored upside down (t = 0 is the bottom row), while the lookup texture
+    // is a regular image with its first row at t = 0
+    vec2 pixel = vec2(vertTexCoord.s, 1.0 - vertTexCoord.t) * resolution;
+
+    // Sample between texel centers so that grid point (i, j) lands on texel (i, j)
+    vec4 encoded = texture2D(lookup, (pixel / lookupStep + 0.5) / lookupSize);
+
+    // Offsets are 16-bit fixed point, high bytes in red/green and low bytes in blue/alpha
+    vec2 offset = (encoded.rg * 255.0 * 256.0 + encoded.ba * 255.0) / 65535.0;
+    offset = (offset * 2.0 - 1.0) * maxOffset;
+
+    vec2 source = (pixel + offset) / resolution;
+    if (source.x < 0.0 || source.x > 1.0 || source.y < 0.0 || source.y > 1.0) {
+        gl_FragColor = vec4(0.0, 0.0, 0.0, 1.0);
+    } else {
+        gl_FragColor = texture2D(texture, vec2(source.x, 1.0 - source.y));
+    }
+}
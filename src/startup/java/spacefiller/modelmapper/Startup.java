@@ -0,0 +1,203 @@
+package spacefiller.modelmapper;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PMatrix3D;
+import processing.core.PShape;
+import processing.core.PVector;
+import processing.opengl.PGraphics3D;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+// Cold start harness for the library, run in a fresh JVM by the `startupArchive` and
+// `startupBenchmark` Gradle tasks.
+//
+//   Startup headless [results file]
+//     Scripts what a sketch does while starting up: loads OpenCV, copies a model, reads a
+//     saved calibration and solves it, without opening a window. Prints how long each step
+//     took. `startupArchive` dumps a class-data-sharing archive at the end of this run.
+//
+//   Startup sketch [results file]
+//     Opens a P3D sketch with a `ModelMapper` and exits on the first `draw()`.
+//
+// Both modes report the time from JVM start, and append it to the results file if given.
+public class Startup {
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+
+  private static long lastStep;
+
+  public static void main(String[] args) throws Exception {
+    String mode = args.length > 0 ? args[0] : "headless";
+    String results = args.length > 1 ? args[1] : null;
+
+    File sketchFolder = Files.createTempDirectory("modelmapper-startup").toFile();
+    // The sketch mode ends in `PApplet.exit()`, which calls System.exit, so clean up in a
+    // shutdown hook. `deleteOnExit()` only removes empty directories.
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteTree(sketchFolder)));
+
+    if (mode.equals("sketch")) {
+      StartupSketch.results = results;
+      writeCalibration(sketchFolder);
+      PApplet.main(StartupSketch.class, "--sketch-path=" + sketchFolder.getAbsolutePath());
+    } else {
+      runHeadless(sketchFolder);
+      report("headless", results);
+    }
+  }
+
+  private static void runHeadless(File sketchFolder) throws Exception {
+    lastStep = System.nanoTime();
+    step("jvm", getUptimeMillis());
+
+    Calibration.isOpenCvAvailable();
+    step("opencv");
+
+    PApplet applet = new PApplet();
+    PGraphics3D graphics = new PGraphics3D();
+    graphics.setParent(applet);
+    graphics.setSize(WIDTH, HEIGHT);
+    applet.g = graphics;
+    applet.width = WIDTH;
+    applet.height = HEIGHT;
+    PShape model = Shapes.createShape(applet, createModel(applet));
+    Shapes.countVertices(model);
+    PVector min = new PVector(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    PVector max = new PVector(Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+    Shapes.getBounds(model, min, max);
+    step("model");
+
+    String path = writeCalibration(sketchFolder);
+    Map<PVector, PVector> pointMapping = IO.readPointMapping(path);
+    step("load");
+
+    CalibrationSettings settings = new CalibrationSettings();
+    CalibrationData data = new IncrementalCalibration(WIDTH, HEIGHT).solve(pointMapping, settings);
+    Calibration.fitDepthRange(data, min, max, settings.depthMargin);
+    settings.robust = true;
+    Calibration.calibrate(pointMapping, WIDTH, HEIGHT, settings);
+    step("solve");
+  }
+
+  private static void step(String name) {
+    long now = System.nanoTime();
+    step(name, (now - lastStep) / 1000000);
+    lastStep = now;
+  }
+
+  private static void step(String name, long millis) {
+    System.out.println("ModelMapper: startup " + name + " " + millis + "ms");
+  }
+
+  static long getUptimeMillis() {
+    return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+  }
+
+  // Prints the time since JVM start and appends it, with the JVM's options, to `results`
+  static void report(String mode, String results) {
+    long uptime = getUptimeMillis();
+    System.out.println("ModelMapper: " + mode + " startup took " + uptime + "ms");
+    if (results == null) {
+      return;
+    }
+
+    boolean archived = false;
+    for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      archived |= argument.startsWith("-XX:SharedArchiveFile");
+    }
+    try (PrintWriter writer = new PrintWriter(new FileWriter(results, true))) {
+      writer.println(mode + "\t" + (archived ? "cds" : "default") + "\t" + uptime);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  // Triangle soup of a few thousand vertices on a sphere, about the size of a small
+  // scanned object
+  private static PShape createModel(PApplet applet) {
+    Random random = new Random(1);
+    PShape shape = applet.createShape();
+    shape.beginShape(PConstants.TRIANGLES);
+    for (int i = 0; i < 3000; i++) {
+      PVector v = new PVector(
+          (float) random.nextGaussian(),
+          (float) random.nextGaussian(),
+          (float) random.nextGaussian()).setMag(100);
+      shape.vertex(v.x, v.y, v.z, random.nextFloat(), random.nextFloat());
+    }
+    shape.endShape();
+    return shape;
+  }
+
+  // Saves a calibration for the sketch in `sketchFolder` to start up with, made of model
+  // points as a known camera would see them
+  private static void deleteTree(File folder) {
+    try (Stream<Path> paths = Files.walk(folder.toPath())) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static String writeCalibration(File sketchFolder) throws IOException {
+    Random random = new Random(1);
+    PMatrix3D modelView = new PMatrix3D();
+    modelView.translate(0, 0, 500);
+    modelView.rotateY(0.3f);
+    float f = WIDTH * 1.2f;
+
+    Map<PVector, PVector> pointMapping = new HashMap<>();
+    while (pointMapping.size() < 12) {
+      PVector modelPoint = new PVector(
+          random.nextFloat() * 200 - 100,
+          random.nextFloat() * 200 - 100,
+          random.nextFloat() * 200 - 100);
+      PVector cameraPoint = modelView.mult(modelPoint, null);
+      pointMapping.put(modelPoint, new PVector(
+          f * cameraPoint.x / cameraPoint.z + WIDTH / 2f,
+          f * cameraPoint.y / cameraPoint.z + HEIGHT / 2f));
+    }
+
+    File data = new File(sketchFolder, "data");
+    data.mkdirs();
+    File file = new File(data, "calibration.ser");
+    IO.writePointMapping(pointMapping, file.getAbsolutePath());
+    return file.getAbsolutePath();
+  }
+
+  public static class StartupSketch extends PApplet {
+    static String results;
+
+    ModelMapper mapper;
+    PShape model;
+
+    public void settings() {
+      size(WIDTH, HEIGHT, P3D);
+    }
+
+    public void setup() {
+      model = createModel(this);
+      mapper = new ModelMapper(this, model);
+    }
+
+    public void draw() {
+      mapper.begin();
+      shape(model);
+      mapper.end();
+
+      report("sketch", results);
+      exit();
+    }
+  }
+}